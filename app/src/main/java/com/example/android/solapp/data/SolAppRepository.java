@@ -17,6 +17,10 @@
 package com.example.android.sunshine.data;
 
 import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Transformations;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.example.android.sunshine.data.database.ListWeatherEntry;
@@ -26,8 +30,10 @@ import com.example.android.sunshine.data.database.WeatherEntry;
 import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
 import com.example.android.sunshine.utilities.SolAppDateUtils;
 
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class SolAppRepository {
     private static final String LOG_TAG = SolAppRepository.class.getSimpleName();
@@ -38,6 +44,12 @@ public class SolAppRepository {
     private final WeatherNetworkDataSource mWeatherNetworkDataSource;
     private final AppExecutors mExecutors;
     private boolean mInitialized = false;
+    // Fetched forecast of the default location which is not stored yet
+    private final MutableLiveData<ListWeatherEntry[]> mFetchedForecast = new MutableLiveData<>();
+    // Epoch day the list starts at, moved on when the date changes
+    private final MutableLiveData<Long> mToday = new MutableLiveData<>();
+    // Built on the first request, every observer of the list shares it
+    private LiveData<List<ListWeatherEntry>> mCurrentForecast;
 
     private SolAppRepository(WeatherDao weatherDao, WeatherNetworkDataSource weatherNetworkDataSource,
                              AppExecutors executors) {
@@ -45,16 +57,29 @@ public class SolAppRepository {
         mWeatherNetworkDataSource = weatherNetworkDataSource;
         mExecutors = executors;
 
-        LiveData<WeatherEntry[]> networkData = mWeatherNetworkDataSource.getCurrentWeatherForecasts();
-
-        networkData.observeForever(newForecastsFromNetwork -> {
-            mExecutors.diskIO().execute(() -> {
-                mWeatherDao.bulkInsert(newForecastsFromNetwork);
-                Log.d(LOG_TAG, "New values inserted");
-            });
-
-        });
-
+        mWeatherNetworkDataSource.setOnForecastFetchedListener(
+                new WeatherNetworkDataSource.OnForecastFetchedListener() {
+                    @Override
+                    public void onForecastListFetched(String locationQuery,
+                                                      ListWeatherEntry[] forecast) {
+                        if (WeatherNetworkDataSource.DEFAULT_LOCATION.equals(locationQuery)) {
+                            mFetchedForecast.postValue(forecast);
+                        }
+                    }
+
+                    @Override
+                    public void onForecastFetched(String locationQuery,
+                                                  WeatherNetworkDataSource.FullForecast forecast) {
+                        mExecutors.diskIO().execute(() -> {
+                            mWeatherDao.bulkInsert(forecast.getEntries());
+                            Log.d(LOG_TAG, "New values inserted for " + locationQuery);
+                        });
+                    }
+                });
+        mWeatherNetworkDataSource.setStoredForecastProvider(locationQuery ->
+                mWeatherDao.getFutureWeatherDays(locationQuery,
+                        SolAppDateUtils.getEpochDayForToday()));
+        SolAppDateUtils.addOnDateChangedListener(this::updateToday);
     }
 
     public synchronized static SolAppRepository getInstance(
@@ -85,25 +110,118 @@ public class SolAppRepository {
         });
     }
 
+    /**
+     * @return The stored forecast from today on, with a freshly fetched forecast laid over it
+     * until that is stored too
+     */
     public LiveData<List<ListWeatherEntry>> getCurrentWeatherForecasts() {
         initializeData();
-        Date today = SolAppDateUtils.getNormalizedUtcDateForToday();
-        return mWeatherDao.getCurrentWeatherForecasts(today);
+        synchronized (this) {
+            if (mCurrentForecast == null) {
+                // Every new day queries the stored forecast from that day on
+                mCurrentForecast = Transformations.switchMap(mToday, this::buildCurrentForecast);
+            }
+        }
+        // In case the date has changed without a broadcast
+        updateToday();
+        return mCurrentForecast;
+    }
+
+    /**
+     * Moves the list on to today, if that is another day than the one it starts at.
+     */
+    private void updateToday() {
+        long today = SolAppDateUtils.getEpochDayForToday();
+        Long shown = mToday.getValue();
+        if (shown == null || shown != today) {
+            mToday.setValue(today);
+        }
+    }
+
+    private LiveData<List<ListWeatherEntry>> buildCurrentForecast(long today) {
+        LiveData<List<ListWeatherEntry>> stored = mWeatherDao.getCurrentWeatherForecasts(
+                WeatherNetworkDataSource.DEFAULT_LOCATION, today);
+
+        MediatorLiveData<List<ListWeatherEntry>> forecast = new MediatorLiveData<>();
+        forecast.addSource(stored, storedForecast -> {
+            ListWeatherEntry[] fetchedForecast = mFetchedForecast.getValue();
+            if (fetchedForecast != null && covers(storedForecast, fetchedForecast, today)) {
+                // Room has the fetched forecast now. Clearing it publishes the stored rows, as
+                // the other source, so the list changes once and only to the same values.
+                mFetchedForecast.setValue(null);
+                return;
+            }
+            forecast.setValue(overlay(storedForecast, fetchedForecast, today));
+        });
+        forecast.addSource(mFetchedForecast, fetchedForecast -> forecast.setValue(
+                overlay(stored.getValue(), fetchedForecast, today)));
+        return forecast;
+    }
+
+    /**
+     * @return Whether the stored entries hold every fetched day from today on, with the same
+     * values
+     */
+    private static boolean covers(@Nullable List<ListWeatherEntry> stored,
+                                  ListWeatherEntry[] fetched, long today) {
+        if (stored == null) return false;
+        Map<Long, ListWeatherEntry> byDate = new TreeMap<>();
+        for (ListWeatherEntry entry : stored) {
+            byDate.put(entry.getEpochDay(), entry);
+        }
+        for (ListWeatherEntry entry : fetched) {
+            if (entry.getEpochDay() < today) continue;
+            ListWeatherEntry storedEntry = byDate.get(entry.getEpochDay());
+            if (storedEntry == null
+                    || storedEntry.getWeatherIconId() != entry.getWeatherIconId()
+                    || storedEntry.getMin() != entry.getMin()
+                    || storedEntry.getMax() != entry.getMax()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The stored entries with the fetched ones replacing those of the same day, sorted
+     * by date
+     */
+    private static List<ListWeatherEntry> overlay(@Nullable List<ListWeatherEntry> stored,
+                                                  @Nullable ListWeatherEntry[] fetched,
+                                                  long today) {
+        if (fetched == null) return stored;
+
+        Map<Long, ListWeatherEntry> byDate = new TreeMap<>();
+        if (stored != null) {
+            for (ListWeatherEntry entry : stored) {
+                byDate.put(entry.getEpochDay(), entry);
+            }
+        }
+        for (ListWeatherEntry entry : fetched) {
+            if (entry.getEpochDay() < today) continue;
+            ListWeatherEntry storedEntry = byDate.get(entry.getEpochDay());
+            // A stored day keeps its row id, a new one gets an id no row can have
+            int id = storedEntry != null ? storedEntry.getId() : (int) -entry.getEpochDay();
+            byDate.put(entry.getEpochDay(), new ListWeatherEntry(id, entry.getWeatherIconId(),
+                    entry.getEpochDay(), entry.getMin(), entry.getMax()));
+        }
+        return new ArrayList<>(byDate.values());
     }
 
 
-    public LiveData<WeatherEntry> getWeatherByDate(Date date) {
+    public LiveData<WeatherEntry> getWeatherByDate(long epochDay) {
         initializeData();
-        return mWeatherDao.getWeatherByDate(date);
+        return mWeatherDao.getWeatherByDate(WeatherNetworkDataSource.DEFAULT_LOCATION, epochDay);
     }
 
     private void deleteOldData() {
-        Date today = SolAppDateUtils.getNormalizedUtcDateForToday();
+        long today = SolAppDateUtils.getEpochDayForToday();
         mWeatherDao.deleteOldWeather(today);    }
 
     private boolean isFetchNeeded() {
-        Date today = SolAppDateUtils.getNormalizedUtcDateForToday();
-        int count = mWeatherDao.countAllFutureWeather(today);
+        long today = SolAppDateUtils.getEpochDayForToday();
+        int count = mWeatherDao.countAllFutureWeather(WeatherNetworkDataSource.DEFAULT_LOCATION,
+                today);
         return (count < WeatherNetworkDataSource.NUM_DAYS);
     }
 
@@ -1,17 +0,0 @@
-package com.example.android.sunshine.data.database;
-
-import android.arch.persistence.room.TypeConverter;
-
-import java.util.Date;
-
-class DateConverter {
-    @TypeConverter
-    public static Date toDate(Long timestamp) {
-        return timestamp == null ? null : new Date(timestamp);
-    }
-
-    @TypeConverter
-    public static Long toTimestamp(Date date) {
-        return date == null ? null : date.getTime();
-    }
-}
\ No newline at end of file
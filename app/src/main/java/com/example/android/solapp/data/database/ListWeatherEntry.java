@@ -1,19 +1,17 @@
 package com.example.android.sunshine.data.database;
 
-import java.util.Date;
-
 public class ListWeatherEntry {
 
     private int id;
     private int weatherIconId;
-    private Date date;
+    private long epochDay;
     private double min;
     private double max;
 
-    public ListWeatherEntry(int id, int weatherIconId, Date date, double min, double max) {
+    public ListWeatherEntry(int id, int weatherIconId, long epochDay, double min, double max) {
         this.id = id;
         this.weatherIconId = weatherIconId;
-        this.date = date;
+        this.epochDay = epochDay;
         this.min = min;
         this.max = max;
     }
@@ -26,8 +24,8 @@ public class ListWeatherEntry {
         return weatherIconId;
     }
 
-    public Date getDate() {
-        return date;
+    public long getEpochDay() {
+        return epochDay;
     }
 
     public double getMin() {
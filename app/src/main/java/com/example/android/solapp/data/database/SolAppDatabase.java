@@ -1,14 +1,16 @@
 package com.example.android.sunshine.data.database;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
 import android.arch.persistence.room.Database;
 import android.arch.persistence.room.Room;
 import android.arch.persistence.room.RoomDatabase;
-import android.arch.persistence.room.TypeConverters;
+import android.arch.persistence.room.migration.Migration;
 import android.content.Context;
 import android.util.Log;
 
-@Database(entities = {WeatherEntry.class}, version = 1)
-@TypeConverters(DateConverter.class)
+import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
+
+@Database(entities = {WeatherEntry.class}, version = 3)
 public abstract class SolAppDatabase extends RoomDatabase {
 
     private static final String LOG_TAG = SolAppDatabase.class.getSimpleName();
@@ -16,6 +18,53 @@ public abstract class SolAppDatabase extends RoomDatabase {
     private static final Object LOCK = new Object();
     private static SolAppDatabase sInstance;
 
+    /**
+     * Adds the location column. Forecasts stored before were all for the location the app used to
+     * hardcode, and uniqueness is now per location and date.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE weather ADD COLUMN location TEXT");
+            database.execSQL("UPDATE weather SET location = ?",
+                    new Object[]{WeatherNetworkDataSource.DEFAULT_LOCATION});
+            database.execSQL("DROP INDEX IF EXISTS index_weather_date");
+            database.execSQL("CREATE UNIQUE INDEX index_weather_location_date "
+                    + "ON weather (location, date)");
+        }
+    };
+
+    /**
+     * Replaces the date column, milliseconds of a normalized UTC midnight, with the not null
+     * epochDay column, the days since the epoch of the same date. SQLite cannot change the type
+     * of a column, so the table is copied.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE weather_new ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "location TEXT, "
+                    + "weatherIconId INTEGER NOT NULL, "
+                    + "epochDay INTEGER NOT NULL, "
+                    + "min REAL NOT NULL, "
+                    + "max REAL NOT NULL, "
+                    + "humidity REAL NOT NULL, "
+                    + "pressure REAL NOT NULL, "
+                    + "wind REAL NOT NULL, "
+                    + "degrees REAL NOT NULL)");
+            database.execSQL("INSERT INTO weather_new (id, location, weatherIconId, epochDay, "
+                    + "min, max, humidity, pressure, wind, degrees) "
+                    + "SELECT id, location, weatherIconId, date / 86400000, "
+                    + "min, max, humidity, pressure, wind, degrees "
+                    + "FROM weather WHERE date IS NOT NULL");
+            database.execSQL("DROP TABLE weather");
+            database.execSQL("ALTER TABLE weather_new RENAME TO weather");
+            database.execSQL("CREATE UNIQUE INDEX index_weather_location_epochDay "
+                    + "ON weather (location, epochDay)");
+        }
+    };
+
     public static SolAppDatabase getInstance(Context context) {
 
         Log.d(LOG_TAG, "Getting the database");
@@ -23,7 +72,9 @@ public abstract class SolAppDatabase extends RoomDatabase {
         if (sInstance == null) {
             synchronized (LOCK) {
                 sInstance = Room.databaseBuilder(context.getApplicationContext(),
-                        SolAppDatabase.class, SolAppDatabase.DATABASE_NAME).build();
+                        SolAppDatabase.class, SolAppDatabase.DATABASE_NAME)
+                        .addMigrations(MIGRATION_1_2, MIGRATION_2_3)
+                        .build();
                 Log.d(LOG_TAG, "Made new database");
             }
         }
@@ -6,24 +6,27 @@ import android.arch.persistence.room.Insert;
 import android.arch.persistence.room.OnConflictStrategy;
 import android.arch.persistence.room.Query;
 
-import java.util.Date;
 import java.util.List;
 
 @Dao
 public interface WeatherDao {
 
-    @Query("SELECT * FROM weather WHERE date = :date")
-    LiveData<WeatherEntry> getWeatherByDate(Date date);
+    @Query("SELECT * FROM weather WHERE location = :location AND epochDay = :epochDay")
+    LiveData<WeatherEntry> getWeatherByDate(String location, long epochDay);
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void bulkInsert(WeatherEntry... weather);
 
-    @Query("SELECT COUNT(id) FROM weather WHERE date >= :date")
-    int countAllFutureWeather(Date date);
+    @Query("SELECT COUNT(id) FROM weather WHERE location = :location AND epochDay >= :epochDay")
+    int countAllFutureWeather(String location, long epochDay);
 
-    @Query("DELETE FROM weather WHERE date < :date")
-    void deleteOldWeather(Date date);
+    @Query("SELECT epochDay FROM weather WHERE location = :location AND epochDay >= :epochDay")
+    long[] getFutureWeatherDays(String location, long epochDay);
 
-    @Query("SELECT id, weatherIconId, date, min, max FROM weather WHERE date >= :date")
-    LiveData<List<ListWeatherEntry>> getCurrentWeatherForecasts(Date date);
+    @Query("DELETE FROM weather WHERE epochDay < :epochDay")
+    void deleteOldWeather(long epochDay);
+
+    @Query("SELECT id, weatherIconId, epochDay, min, max FROM weather "
+            + "WHERE location = :location AND epochDay >= :epochDay")
+    LiveData<List<ListWeatherEntry>> getCurrentWeatherForecasts(String location, long epochDay);
 }
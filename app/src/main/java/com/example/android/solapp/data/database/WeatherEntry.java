@@ -5,15 +5,15 @@ import android.arch.persistence.room.Ignore;
 import android.arch.persistence.room.Index;
 import android.arch.persistence.room.PrimaryKey;
 
-import java.util.Date;
-
-@Entity(tableName = "weather", indices = {@Index(value = {"date"}, unique = true)})
+@Entity(tableName = "weather", indices = {@Index(value = {"location", "epochDay"}, unique = true)})
 public class WeatherEntry {
 
     @PrimaryKey(autoGenerate = true)
     private int id;
+    private String location;
     private int weatherIconId;
-    private Date date;
+    // Days since the epoch of the forecast's normalized UTC date
+    private long epochDay;
     private double min;
     private double max;
     private double humidity;
@@ -22,9 +22,10 @@ public class WeatherEntry {
     private double degrees;
 
     @Ignore
-    public WeatherEntry(int weatherIconId, Date date, double min, double max, double humidity, double pressure, double wind, double degrees) {
+    public WeatherEntry(String location, int weatherIconId, long epochDay, double min, double max, double humidity, double pressure, double wind, double degrees) {
+        this.location = location;
         this.weatherIconId = weatherIconId;
-        this.date = date;
+        this.epochDay = epochDay;
         this.min = min;
         this.max = max;
         this.humidity = humidity;
@@ -33,10 +34,11 @@ public class WeatherEntry {
         this.degrees = degrees;
     }
 
-    public WeatherEntry(int id, int weatherIconId, Date date, double min, double max, double humidity, double pressure, double wind, double degrees) {
+    public WeatherEntry(int id, String location, int weatherIconId, long epochDay, double min, double max, double humidity, double pressure, double wind, double degrees) {
         this.id = id;
+        this.location = location;
         this.weatherIconId = weatherIconId;
-        this.date = date;
+        this.epochDay = epochDay;
         this.min = min;
         this.max = max;
         this.humidity = humidity;
@@ -49,8 +51,12 @@ public class WeatherEntry {
         return id;
     }
 
-    public Date getDate() {
-        return date;
+    public String getLocation() {
+        return location;
+    }
+
+    public long getEpochDay() {
+        return epochDay;
     }
 
     public int getWeatherIconId() {
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.VisibleForTesting;
+
+/**
+ * A few byte buffers shared by every read of a forecast response, so a steady sync does not
+ * allocate buffers for the bodies it decodes, drains or caches. A buffer which is not given back
+ * is simply collected, but one must never be given back twice.
+ */
+final class BufferPool {
+
+    static final int BUFFER_SIZE = 8192;
+    // Enough for the fetches which can run at once, each with a hedged request and a cache copy
+    static final int MAX_POOLED_BUFFERS = 8;
+
+    private static final BufferPool sInstance = new BufferPool(MAX_POOLED_BUFFERS);
+
+    private final byte[][] mBuffers;
+    private int mCount;
+    private long mAllocationCount;
+    private long mOutstandingCount;
+
+    BufferPool(int maxPooledBuffers) {
+        mBuffers = new byte[maxPooledBuffers][];
+    }
+
+    static BufferPool getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * @return A buffer of {@link #BUFFER_SIZE} bytes, with whatever content it had before.
+     */
+    synchronized byte[] acquire() {
+        mOutstandingCount++;
+        if (mCount == 0) {
+            mAllocationCount++;
+            return new byte[BUFFER_SIZE];
+        }
+        byte[] buffer = mBuffers[--mCount];
+        mBuffers[mCount] = null;
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back, it must not be used after this.
+     */
+    synchronized void release(byte[] buffer) {
+        if (buffer.length != BUFFER_SIZE) return;
+        mOutstandingCount--;
+        if (mCount < mBuffers.length) {
+            mBuffers[mCount++] = buffer;
+        }
+    }
+
+    /**
+     * @return How many buffers the pool has allocated, because it had none to hand out
+     */
+    @VisibleForTesting
+    synchronized long getAllocationCount() {
+        return mAllocationCount;
+    }
+
+    /**
+     * @return How many more buffers have been acquired than given back
+     */
+    @VisibleForTesting
+    synchronized long getOutstandingCount() {
+        return mOutstandingCount;
+    }
+}
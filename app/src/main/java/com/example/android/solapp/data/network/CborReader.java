@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Streaming reader for the subset of CBOR (RFC 7049) a forecast uses: maps, arrays, text
+ * strings, integers, floats, booleans and null, in containers of definite or indefinite length.
+ * Tags are skipped. Like {@link android.util.JsonReader}, values are read one at a time as the
+ * stream is consumed, so the CBOR parser is structured just like the JSON one.
+ */
+final class CborReader implements Closeable {
+
+    static final int TYPE_UNSIGNED_INTEGER = 0;
+    static final int TYPE_NEGATIVE_INTEGER = 1;
+    static final int TYPE_BYTE_STRING = 2;
+    static final int TYPE_TEXT_STRING = 3;
+    static final int TYPE_ARRAY = 4;
+    static final int TYPE_MAP = 5;
+    static final int TYPE_TAG = 6;
+    static final int TYPE_SIMPLE = 7;
+
+    private static final int INFO_ONE_BYTE = 24;
+    private static final int INFO_TWO_BYTES = 25;
+    private static final int INFO_FOUR_BYTES = 26;
+    private static final int INFO_EIGHT_BYTES = 27;
+    private static final int INFO_INDEFINITE = 31;
+    private static final int SIMPLE_FALSE = 20;
+    private static final int SIMPLE_TRUE = 21;
+    private static final int SIMPLE_NULL = 22;
+    private static final int BREAK = 0xff;
+
+    private static final long INDEFINITE_LENGTH = -1;
+    private static final int MAX_DEPTH = 32;
+    // Forecast strings are short, a longer one is corrupt data rather than something to allocate
+    private static final int MAX_STRING_LENGTH = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final InputStream mIn;
+    private byte[] mBuffer;
+    private int mPosition;
+    private int mLimit;
+    // Items left to read in each open container, INDEFINITE_LENGTH until its break
+    private final long[] mRemaining = new long[MAX_DEPTH];
+    private int mDepth;
+    private int mPeeked = -1;
+
+    CborReader(InputStream in) {
+        mIn = in;
+        mBuffer = BufferPool.getInstance().acquire();
+    }
+
+    /**
+     * @return The major type of the next value, one of the TYPE_ constants.
+     */
+    int peek() throws IOException {
+        return peekInitialByte() >>> 5;
+    }
+
+    boolean hasNext() throws IOException {
+        if (mDepth == 0) return true;
+        long remaining = mRemaining[mDepth - 1];
+        return remaining == INDEFINITE_LENGTH ? peekByte() != BREAK : remaining > 0;
+    }
+
+    void beginArray() throws IOException {
+        int initialByte = nextInitialByte(TYPE_ARRAY);
+        push(readLength(initialByte));
+    }
+
+    void endArray() throws IOException {
+        endContainer();
+    }
+
+    void beginMap() throws IOException {
+        int initialByte = nextInitialByte(TYPE_MAP);
+        long size = readLength(initialByte);
+        // Keys and values both count as items
+        push(size == INDEFINITE_LENGTH ? INDEFINITE_LENGTH : size * 2);
+    }
+
+    void endMap() throws IOException {
+        endContainer();
+    }
+
+    String nextName() throws IOException {
+        return nextString();
+    }
+
+    String nextString() throws IOException {
+        int initialByte = nextInitialByte(TYPE_TEXT_STRING);
+        long length = readLength(initialByte);
+        if (length != INDEFINITE_LENGTH) {
+            return readUtf8((int) length);
+        }
+        StringBuilder chunks = new StringBuilder();
+        while (peekByte() != BREAK) {
+            int chunk = readChunkHeader(TYPE_TEXT_STRING);
+            chunks.append(readUtf8((int) readLength(chunk)));
+        }
+        mPeeked = -1;
+        return chunks.toString();
+    }
+
+    long nextLong() throws IOException {
+        int type = peek();
+        if (type != TYPE_UNSIGNED_INTEGER && type != TYPE_NEGATIVE_INTEGER) {
+            throw new MalformedCborException("Expected an integer but was type " + type);
+        }
+        int initialByte = nextInitialByte(type);
+        long argument = readArgument(initialByte & 0x1f);
+        if (argument < 0) throw new MalformedCborException("Integer out of range");
+        return type == TYPE_UNSIGNED_INTEGER ? argument : -1 - argument;
+    }
+
+    int nextInt() throws IOException {
+        long value = nextLong();
+        if ((int) value != value) throw new MalformedCborException("Integer out of range");
+        return (int) value;
+    }
+
+    /**
+     * Reads a float of any width, or an integer, as a double.
+     */
+    double nextDouble() throws IOException {
+        int initialByte = peekInitialByte();
+        if (initialByte >>> 5 != TYPE_SIMPLE) {
+            return nextLong();
+        }
+        nextInitialByte(TYPE_SIMPLE);
+        switch (initialByte & 0x1f) {
+            case INFO_TWO_BYTES:
+                return halfToDouble((int) readUnsigned(2));
+            case INFO_FOUR_BYTES:
+                return Float.intBitsToFloat((int) readUnsigned(4));
+            case INFO_EIGHT_BYTES:
+                return Double.longBitsToDouble(readUnsigned(8));
+            default:
+                throw new MalformedCborException("Expected a number");
+        }
+    }
+
+    boolean nextBoolean() throws IOException {
+        int initialByte = nextInitialByte(TYPE_SIMPLE);
+        switch (initialByte & 0x1f) {
+            case SIMPLE_FALSE:
+                return false;
+            case SIMPLE_TRUE:
+                return true;
+            default:
+                throw new MalformedCborException("Expected a boolean");
+        }
+    }
+
+    void nextNull() throws IOException {
+        int initialByte = nextInitialByte(TYPE_SIMPLE);
+        if ((initialByte & 0x1f) != SIMPLE_NULL) throw new MalformedCborException("Expected null");
+    }
+
+    void skipValue() throws IOException {
+        int initialByte = peekInitialByte();
+        int type = initialByte >>> 5;
+        switch (type) {
+            case TYPE_ARRAY:
+                beginArray();
+                while (hasNext()) skipValue();
+                endArray();
+                break;
+            case TYPE_MAP:
+                beginMap();
+                while (hasNext()) skipValue();
+                endMap();
+                break;
+            case TYPE_BYTE_STRING:
+            case TYPE_TEXT_STRING:
+                nextInitialByte(type);
+                long length = readLength(initialByte);
+                if (length != INDEFINITE_LENGTH) {
+                    skipBytes(length);
+                    break;
+                }
+                while (peekByte() != BREAK) {
+                    skipBytes(readLength(readChunkHeader(type)));
+                }
+                mPeeked = -1;
+                break;
+            default:
+                // Integers, floats and simple values are just their argument
+                nextInitialByte(type);
+                readArgument(initialByte & 0x1f);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mBuffer == null) return;
+        byte[] buffer = mBuffer;
+        mBuffer = null;
+        BufferPool.getInstance().release(buffer);
+        mIn.close();
+    }
+
+    private void push(long items) throws MalformedCborException {
+        if (mDepth == MAX_DEPTH) throw new MalformedCborException("Nested too deeply");
+        mRemaining[mDepth++] = items;
+    }
+
+    private void endContainer() throws IOException {
+        if (mDepth == 0) throw new MalformedCborException("No open container");
+        long remaining = mRemaining[mDepth - 1];
+        if (remaining == INDEFINITE_LENGTH) {
+            if (peekByte() != BREAK) throw new MalformedCborException("Container has unread items");
+            mPeeked = -1;
+        } else if (remaining != 0) {
+            throw new MalformedCborException("Container has unread items");
+        }
+        mDepth--;
+    }
+
+    private int peekByte() throws IOException {
+        if (mPeeked == -1) {
+            mPeeked = readByte();
+        }
+        return mPeeked;
+    }
+
+    private int peekInitialByte() throws IOException {
+        int initialByte = peekByte();
+        while (initialByte >>> 5 == TYPE_TAG) {
+            mPeeked = -1;
+            readArgument(initialByte & 0x1f);
+            initialByte = peekByte();
+        }
+        if (initialByte == BREAK) throw new MalformedCborException("Unexpected break");
+        return initialByte;
+    }
+
+    /**
+     * Consumes the initial byte of the next value and counts the value against its container.
+     */
+    private int nextInitialByte(int expectedType) throws IOException {
+        int initialByte = peekInitialByte();
+        if (initialByte >>> 5 != expectedType) {
+            throw new MalformedCborException("Expected type " + expectedType
+                    + " but was " + (initialByte >>> 5));
+        }
+        mPeeked = -1;
+        if (mDepth > 0) {
+            long remaining = mRemaining[mDepth - 1];
+            if (remaining == 0) throw new MalformedCborException("Container has no more items");
+            if (remaining > 0) mRemaining[mDepth - 1] = remaining - 1;
+        }
+        return initialByte;
+    }
+
+    private int readChunkHeader(int type) throws IOException {
+        int chunk = peekByte();
+        mPeeked = -1;
+        if (chunk >>> 5 != type || (chunk & 0x1f) == INFO_INDEFINITE) {
+            throw new MalformedCborException("Invalid string chunk");
+        }
+        return chunk;
+    }
+
+    private long readLength(int initialByte) throws IOException {
+        long length = readArgument(initialByte & 0x1f);
+        if (length != INDEFINITE_LENGTH && (length < 0 || length > Integer.MAX_VALUE)) {
+            throw new MalformedCborException("Length out of range");
+        }
+        return length;
+    }
+
+    private long readArgument(int info) throws IOException {
+        if (info < INFO_ONE_BYTE) return info;
+        switch (info) {
+            case INFO_ONE_BYTE:
+                return readByte();
+            case INFO_TWO_BYTES:
+                return readUnsigned(2);
+            case INFO_FOUR_BYTES:
+                return readUnsigned(4);
+            case INFO_EIGHT_BYTES:
+                return readUnsigned(8);
+            case INFO_INDEFINITE:
+                return INDEFINITE_LENGTH;
+            default:
+                throw new MalformedCborException("Reserved additional information " + info);
+        }
+    }
+
+    private long readUnsigned(int byteCount) throws IOException {
+        long value = 0;
+        for (int i = 0; i < byteCount; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    private int readByte() throws IOException {
+        if (mPosition == mLimit) fill();
+        return mBuffer[mPosition++] & 0xff;
+    }
+
+    private String readUtf8(int length) throws IOException {
+        if (length > MAX_STRING_LENGTH) throw new MalformedCborException("String too long");
+        if (mLimit - mPosition >= length) {
+            // Decoded in place, which is the common case for the short keys of a forecast
+            String string = new String(mBuffer, mPosition, length, UTF_8);
+            mPosition += length;
+            return string;
+        }
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            if (mPosition == mLimit) fill();
+            int count = Math.min(length - offset, mLimit - mPosition);
+            System.arraycopy(mBuffer, mPosition, bytes, offset, count);
+            mPosition += count;
+            offset += count;
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    private void skipBytes(long count) throws IOException {
+        while (count > 0) {
+            if (mPosition == mLimit) fill();
+            int skipped = (int) Math.min(count, mLimit - mPosition);
+            mPosition += skipped;
+            count -= skipped;
+        }
+    }
+
+    private void fill() throws IOException {
+        int read = mIn.read(mBuffer, 0, mBuffer.length);
+        if (read == -1) throw new EOFException("Truncated CBOR data");
+        mPosition = 0;
+        mLimit = read;
+    }
+
+    private static double halfToDouble(int half) {
+        int exponent = (half >> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        double value;
+        if (exponent == 0) {
+            value = Math.scalb((double) mantissa, -24);
+        } else if (exponent == 31) {
+            value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+        } else {
+            value = Math.scalb((double) (mantissa + 1024), exponent - 25);
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops forecast requests to a host which keeps failing.
+ * <p>
+ * Each host has its own breaker. After {@code failureThreshold} consecutive transient failures
+ * the breaker of the host opens and rejects requests to it for {@code openDurationMillis}. Then
+ * a single trial request is let through: an answer from the host closes the breaker, another
+ * failure opens it again. The state is kept in SharedPreferences, so restarting the process does
+ * not reset it.
+ */
+class CircuitBreaker {
+
+    private static final String LOG_TAG = CircuitBreaker.class.getSimpleName();
+
+    static final String PREFERENCES_NAME = "circuit_breaker";
+    private static final String CONSECUTIVE_FAILURES_PREFIX = "consecutive_failures:";
+    static final String OPENED_AT_MILLIS_PREFIX = "opened_at_millis:";
+    private static final long CLOSED = 0;
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_DURATION_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private final SharedPreferences mPreferences;
+    private final int mFailureThreshold;
+    private final long mOpenDurationMillis;
+    // Hosts whose half open breaker has let its trial request through
+    private final Set<String> mTrialsInFlight = new HashSet<>();
+
+    CircuitBreaker(Context context, int failureThreshold, long openDurationMillis) {
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mFailureThreshold = failureThreshold;
+        mOpenDurationMillis = openDurationMillis;
+    }
+
+    CircuitBreaker(Context context) {
+        this(context, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION_MILLIS);
+    }
+
+    synchronized boolean allowRequest(String host) {
+        long openedAtMillis = mPreferences.getLong(OPENED_AT_MILLIS_PREFIX + host, CLOSED);
+        if (openedAtMillis == CLOSED) return true;
+
+        long openForMillis = System.currentTimeMillis() - openedAtMillis;
+        // A clock moved backwards must not keep the breaker open forever
+        if (openForMillis >= 0 && openForMillis < mOpenDurationMillis) return false;
+        if (!mTrialsInFlight.add(host)) return false;
+
+        Log.d(LOG_TAG, "Half open for " + host + ", letting a trial request through");
+        return true;
+    }
+
+    /**
+     * @return How long until the breaker of the host lets a trial request through, 0 if it is
+     * closed or already half open
+     */
+    synchronized long getMillisUntilTrial(String host) {
+        long openedAtMillis = mPreferences.getLong(OPENED_AT_MILLIS_PREFIX + host, CLOSED);
+        if (openedAtMillis == CLOSED) return 0;
+
+        long openForMillis = System.currentTimeMillis() - openedAtMillis;
+        if (openForMillis < 0) return 0;
+        return Math.max(0, mOpenDurationMillis - openForMillis);
+    }
+
+    /**
+     * Records that the host answered, even with an error which is not transient.
+     */
+    synchronized void recordSuccess(String host) {
+        mTrialsInFlight.remove(host);
+        String failuresKey = CONSECUTIVE_FAILURES_PREFIX + host;
+        String openedAtKey = OPENED_AT_MILLIS_PREFIX + host;
+        if (!mPreferences.contains(failuresKey) && !mPreferences.contains(openedAtKey)) {
+            return;
+        }
+        mPreferences.edit()
+                .remove(failuresKey)
+                .remove(openedAtKey)
+                .apply();
+    }
+
+    /**
+     * Records a transient failure of a request to the host.
+     */
+    synchronized void recordFailure(String host) {
+        String failuresKey = CONSECUTIVE_FAILURES_PREFIX + host;
+        int failures = mPreferences.getInt(failuresKey, 0) + 1;
+        SharedPreferences.Editor editor = mPreferences.edit().putInt(failuresKey, failures);
+        if (mTrialsInFlight.remove(host) || failures >= mFailureThreshold) {
+            Log.w(LOG_TAG, "Opening for " + host + " after " + failures
+                    + " consecutive failures");
+            editor.putLong(OPENED_AT_MILLIS_PREFIX + host, System.currentTimeMillis());
+        }
+        editor.apply();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import com.firebase.jobdispatcher.Constraint;
+import com.firebase.jobdispatcher.Driver;
+import com.firebase.jobdispatcher.FirebaseJobDispatcher;
+import com.firebase.jobdispatcher.GooglePlayDriver;
+import com.firebase.jobdispatcher.Job;
+import com.firebase.jobdispatcher.Lifetime;
+import com.firebase.jobdispatcher.Trigger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the immediate syncs in {@link SolAppSyncIntentService} and schedules the others as jobs
+ * of {@link SunshineFirebaseJobService}.
+ */
+public class FirebaseSyncScheduler implements SyncScheduler {
+    private static final String LOG_TAG = FirebaseSyncScheduler.class.getSimpleName();
+
+    private static final String SOLAPP_SYNC_TAG = "solapp-sync";
+    // One-off sync of the whole horizon after a poor link only got the first days
+    static final String SOLAPP_DEFERRED_SYNC_TAG = "solapp-deferred-sync";
+    private static final int DEFERRED_SYNC_DELAY_SECONDS = (int) TimeUnit.MINUTES.toSeconds(10);
+    private static final int DEFERRED_SYNC_FLEXTIME_SECONDS = (int) TimeUnit.MINUTES.toSeconds(10);
+
+    private final Context mContext;
+
+    public FirebaseSyncScheduler(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    @Override
+    public void startImmediateSync() {
+        Intent intentToFetch = new Intent(mContext, SolAppSyncIntentService.class);
+        mContext.startService(intentToFetch);
+        Log.d(LOG_TAG, "Service created");
+    }
+
+    @Override
+    public void scheduleRecurringSync(long intervalMillis) {
+        int syncIntervalSeconds = (int) TimeUnit.MILLISECONDS.toSeconds(intervalMillis);
+        int syncFlextimeSeconds = syncIntervalSeconds / 3;
+        FirebaseJobDispatcher dispatcher = newDispatcher();
+
+        Job syncSunshineJob = dispatcher.newJobBuilder()
+                .setService(SunshineFirebaseJobService.class)
+                .setTag(SOLAPP_SYNC_TAG)
+                .setConstraints(Constraint.ON_ANY_NETWORK)
+                .setLifetime(Lifetime.FOREVER)
+                .setRecurring(true)
+                .setTrigger(Trigger.executionWindow(
+                        syncIntervalSeconds,
+                        syncIntervalSeconds + syncFlextimeSeconds))
+                .setReplaceCurrent(true)
+                .build();
+
+        dispatcher.schedule(syncSunshineJob);
+        Log.d(LOG_TAG, "Job scheduled");
+    }
+
+    @Override
+    public void scheduleDeferredFullSync() {
+        FirebaseJobDispatcher dispatcher = newDispatcher();
+
+        Job deferredSyncJob = dispatcher.newJobBuilder()
+                .setService(SunshineFirebaseJobService.class)
+                .setTag(SOLAPP_DEFERRED_SYNC_TAG)
+                .setConstraints(Constraint.ON_ANY_NETWORK)
+                .setLifetime(Lifetime.UNTIL_NEXT_BOOT)
+                .setRecurring(false)
+                .setTrigger(Trigger.executionWindow(
+                        DEFERRED_SYNC_DELAY_SECONDS,
+                        DEFERRED_SYNC_DELAY_SECONDS + DEFERRED_SYNC_FLEXTIME_SECONDS))
+                .setReplaceCurrent(false)
+                .build();
+
+        dispatcher.schedule(deferredSyncJob);
+        Log.d(LOG_TAG, "Deferred full sync scheduled");
+    }
+
+    private FirebaseJobDispatcher newDispatcher() {
+        Driver driver = new GooglePlayDriver(mContext);
+        return new FirebaseJobDispatcher(driver);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Turns a forecast response body in one wire format into weather entries.
+ */
+interface ForecastDecoder {
+
+    /**
+     * @return The value of the request's format parameter that asks the server for this format.
+     */
+    String getFormat();
+
+    /**
+     * @return Whether a response with the given Content-Type is in this decoder's format.
+     */
+    boolean canDecode(@Nullable String contentType);
+
+    /**
+     * Decodes the forecast straight from the body stream.
+     *
+     * @param location The location query the forecast was requested for
+     * @param firstEntry The entries before this one are skipped over without being decoded. The
+     *                   others are still dated from today, as if none had been skipped.
+     * @param maxEntries The most forecast entries to accept, skipped ones included
+     * @return The forecast
+     * @throws ForecastErrorException If the payload reports an error, as soon as it does
+     * @throws ResponseTooLargeException If the forecast has more than {@code maxEntries} entries
+     */
+    WeatherResponse decode(InputStream body, String location, int firstEntry, int maxEntries)
+            throws IOException;
+}
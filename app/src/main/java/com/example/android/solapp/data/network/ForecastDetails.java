@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import java.util.Arrays;
+
+/**
+ * The forecast fields only the detail screen shows: humidity, pressure, wind speed and wind
+ * direction of every day.
+ * <p>
+ * They are kept as plain numbers, four per day, and only turned into entries on the thread that
+ * stores them, after the list fields have been published.
+ */
+final class ForecastDetails {
+
+    static final ForecastDetails EMPTY = new Builder().build();
+
+    private static final int FIELD_COUNT = 4;
+    private static final int HUMIDITY = 0;
+    private static final int PRESSURE = 1;
+    private static final int WIND_SPEED = 2;
+    private static final int WIND_DIRECTION = 3;
+
+    private final double[] mValues;
+
+    private ForecastDetails(double[] values) {
+        mValues = values;
+    }
+
+    double getHumidity(int entry) {
+        return get(entry, HUMIDITY);
+    }
+
+    double getPressure(int entry) {
+        return get(entry, PRESSURE);
+    }
+
+    double getWindSpeed(int entry) {
+        return get(entry, WIND_SPEED);
+    }
+
+    double getWindDirection(int entry) {
+        return get(entry, WIND_DIRECTION);
+    }
+
+    private double get(int entry, int field) {
+        return mValues[entry * FIELD_COUNT + field];
+    }
+
+    static final class Builder {
+        private double[] mValues = new double[WeatherNetworkDataSource.NUM_DAYS * FIELD_COUNT];
+        private int mSize;
+
+        /**
+         * Adds the details of the next entry.
+         */
+        void add(double humidity, double pressure, double windSpeed, double windDirection) {
+            int index = grow();
+            mValues[index + HUMIDITY] = humidity;
+            mValues[index + PRESSURE] = pressure;
+            mValues[index + WIND_SPEED] = windSpeed;
+            mValues[index + WIND_DIRECTION] = windDirection;
+        }
+
+        /**
+         * Adds the details of all entries of another builder, after those added so far.
+         */
+        void addAll(Builder other) {
+            int count = other.mSize * FIELD_COUNT;
+            int index = mSize * FIELD_COUNT;
+            if (index + count > mValues.length) {
+                mValues = Arrays.copyOf(mValues, index + count);
+            }
+            System.arraycopy(other.mValues, 0, mValues, index, count);
+            mSize += other.mSize;
+        }
+
+        private int grow() {
+            int index = mSize * FIELD_COUNT;
+            if (index == mValues.length) {
+                mValues = Arrays.copyOf(mValues, Math.max(FIELD_COUNT, mValues.length * 2));
+            }
+            mSize++;
+            return index;
+        }
+
+        ForecastDetails build() {
+            return new ForecastDetails(mValues);
+        }
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size bounded, least recently used disk cache of forecast response bodies.
+ * <p>
+ * Only responses whose Cache-Control allows it are stored. An entry is served without touching the
+ * network while it is younger than its max-age, and may still be served for its
+ * stale-while-revalidate window as long as the caller revalidates it right away.
+ */
+class ForecastResponseCache {
+
+    private static final String LOG_TAG = ForecastResponseCache.class.getSimpleName();
+
+    private static final int FORMAT_VERSION = 2;
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final String DIRECTIVE_NO_STORE = "no-store";
+    private static final String DIRECTIVE_NO_CACHE = "no-cache";
+    private static final String DIRECTIVE_MAX_AGE = "max-age=";
+    private static final String DIRECTIVE_STALE_WHILE_REVALIDATE = "stale-while-revalidate=";
+
+    private final File mDirectory;
+    private final long mMaxSizeBytes;
+
+    // Access ordered, so iteration starts at the least recently used entry
+    private final Map<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean mInitialized;
+    private long mSizeBytes;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    ForecastResponseCache(File directory, long maxSizeBytes) {
+        mDirectory = directory;
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * @return The entry for the url if it can still be served, fresh or within its
+     * stale-while-revalidate window, otherwise null.
+     */
+    @Nullable
+    synchronized Entry get(URL url) {
+        initialize();
+        Entry entry = mEntries.get(keyFor(url));
+        long now = System.currentTimeMillis();
+        if (entry == null || !entry.mUrl.equals(url.toString()) || !entry.isUsable(now)) {
+            mMissCount++;
+            logStats();
+            return null;
+        }
+        mHitCount++;
+        logStats();
+        // Keeps the recency order across process restarts
+        entry.mFile.setLastModified(now);
+        return entry;
+    }
+
+    /**
+     * Starts storing a response body. The returned editor must be committed or aborted.
+     *
+     * @param contentType The response's Content-Type, needed to decode the body later
+     * @return null when the response's Cache-Control does not allow it to be stored.
+     */
+    @Nullable
+    Editor edit(URL url, @Nullable String cacheControl, @Nullable String contentType) {
+        CacheControl directives = CacheControl.parse(cacheControl);
+        if (!directives.isStorable()) return null;
+        return new Editor(url, directives, contentType);
+    }
+
+    /**
+     * Restarts the freshness lifetime of an entry after the server confirmed it with a 304.
+     */
+    synchronized void refresh(URL url, @Nullable String cacheControl) {
+        initialize();
+        Entry entry = mEntries.get(keyFor(url));
+        if (entry == null || !entry.mUrl.equals(url.toString())) return;
+        CacheControl directives = CacheControl.parse(cacheControl);
+        if (!directives.isStorable()) {
+            remove(keyFor(url));
+            return;
+        }
+        File temp = new File(mDirectory, entry.mFile.getName() + TEMP_SUFFIX);
+        try {
+            InputStream in = entry.openBody();
+            OutputStream out = null;
+            try {
+                out = openForWriting(temp, url, System.currentTimeMillis(), directives,
+                        entry.mContentType);
+                byte[] buffer = BufferPool.getInstance().acquire();
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                } finally {
+                    BufferPool.getInstance().release(buffer);
+                }
+            } finally {
+                in.close();
+                if (out != null) out.close();
+            }
+            commit(temp, keyFor(url));
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not refresh cached forecast", e);
+            temp.delete();
+        }
+    }
+
+    private synchronized void commit(File temp, String key) throws IOException {
+        initialize();
+        File file = new File(mDirectory, key + BODY_SUFFIX);
+        remove(key);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not commit " + file);
+        }
+        Entry entry = readEntry(file);
+        mEntries.put(key, entry);
+        mSizeBytes += entry.mFile.length();
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSizeBytes > mMaxSizeBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            mSizeBytes -= eldest.mFile.length();
+            eldest.mFile.delete();
+            mEvictionCount++;
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = mEntries.remove(key);
+        if (entry != null) {
+            mSizeBytes -= entry.mFile.length();
+            entry.mFile.delete();
+        }
+    }
+
+    private void initialize() {
+        if (mInitialized) return;
+        mInitialized = true;
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(LOG_TAG, "Could not create " + mDirectory);
+            return;
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, (a, b) -> {
+            long difference = a.lastModified() - b.lastModified();
+            return difference < 0 ? -1 : (difference == 0 ? 0 : 1);
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(BODY_SUFFIX)) {
+                // Leftover of an interrupted write
+                file.delete();
+                continue;
+            }
+            try {
+                Entry entry = readEntry(file);
+                String key = name.substring(0, name.length() - BODY_SUFFIX.length());
+                if (!key.equals(keyFor(new URL(entry.mUrl)))) {
+                    // Stored under an older naming, it could never be looked up again
+                    file.delete();
+                    continue;
+                }
+                mEntries.put(key, entry);
+                mSizeBytes += file.length();
+            } catch (IOException e) {
+                file.delete();
+            }
+        }
+        trimToSize();
+    }
+
+    private void logStats() {
+        Log.d(LOG_TAG, "Cache hits " + mHitCount + ", misses " + mMissCount
+                + ", evictions " + mEvictionCount);
+    }
+
+    /**
+     * @return The hex SHA-1 of the url, so that no two urls share a file in practice. Lookups
+     * still compare the stored url before trusting an entry.
+     */
+    private static String keyFor(URL url) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java and Android runtime is required to provide SHA-1
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(url.toString().getBytes(UTF_8));
+        StringBuilder key = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            key.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+        }
+        return key.toString();
+    }
+
+    private static OutputStream openForWriting(File file, URL url, long storedAtMillis,
+                                               CacheControl directives,
+                                               @Nullable String contentType) throws IOException {
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(url.toString());
+        out.writeLong(storedAtMillis);
+        out.writeLong(directives.mMaxAgeMillis);
+        out.writeLong(directives.mStaleWhileRevalidateMillis);
+        out.writeUTF(contentType != null ? contentType : "");
+        return out;
+    }
+
+    private static Entry readEntry(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            if (in.readInt() != FORMAT_VERSION) throw new IOException("Unknown cache format");
+            String url = in.readUTF();
+            long storedAtMillis = in.readLong();
+            long maxAgeMillis = in.readLong();
+            long staleWhileRevalidateMillis = in.readLong();
+            String contentType = in.readUTF();
+            return new Entry(file, url, storedAtMillis, maxAgeMillis, staleWhileRevalidateMillis,
+                    contentType.isEmpty() ? null : contentType);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * A stored response body and its freshness information.
+     */
+    static final class Entry {
+        private final File mFile;
+        private final String mUrl;
+        private final long mStoredAtMillis;
+        private final long mMaxAgeMillis;
+        private final long mStaleWhileRevalidateMillis;
+        private final String mContentType;
+
+        private Entry(File file, String url, long storedAtMillis, long maxAgeMillis,
+                      long staleWhileRevalidateMillis, @Nullable String contentType) {
+            mFile = file;
+            mUrl = url;
+            mStoredAtMillis = storedAtMillis;
+            mMaxAgeMillis = maxAgeMillis;
+            mStaleWhileRevalidateMillis = staleWhileRevalidateMillis;
+            mContentType = contentType;
+        }
+
+        @Nullable
+        String getContentType() {
+            return mContentType;
+        }
+
+        boolean isFresh(long nowMillis) {
+            long age = nowMillis - mStoredAtMillis;
+            return age >= 0 && age < mMaxAgeMillis;
+        }
+
+        private boolean isUsable(long nowMillis) {
+            long age = nowMillis - mStoredAtMillis;
+            return age >= 0 && age < mMaxAgeMillis + mStaleWhileRevalidateMillis;
+        }
+
+        /**
+         * @return The decoded response body, positioned after the entry header.
+         */
+        InputStream openBody() throws IOException {
+            DataInputStream in =
+                    new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            in.readInt();
+            in.readUTF();
+            in.readLong();
+            in.readLong();
+            in.readLong();
+            in.readUTF();
+            return in;
+        }
+    }
+
+    /**
+     * Copies a response body to the cache while it is being read.
+     */
+    final class Editor {
+        private final URL mUrl;
+        private final File mTemp;
+        private final CacheControl mDirectives;
+        private final String mContentType;
+        private OutputStream mOut;
+
+        private Editor(URL url, CacheControl directives, @Nullable String contentType) {
+            mUrl = url;
+            mTemp = new File(mDirectory, keyFor(url) + "-" + Thread.currentThread().getId()
+                    + TEMP_SUFFIX);
+            mDirectives = directives;
+            mContentType = contentType;
+        }
+
+        /**
+         * @return A stream which reads from {@code in} and writes every byte read to the cache.
+         * If the cache file cannot be written, the body is still read but nothing is stored.
+         */
+        InputStream tee(InputStream in) {
+            try {
+                synchronized (ForecastResponseCache.this) {
+                    initialize();
+                }
+                mOut = openForWriting(mTemp, mUrl, System.currentTimeMillis(), mDirectives,
+                        mContentType);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Not caching forecast", e);
+                abort();
+                return in;
+            }
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) write(b);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read > 0) write(buffer, offset, read);
+                    return read;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    // Skipped bytes must still reach the cache
+                    byte[] buffer = new byte[(int) Math.min(n, 8192)];
+                    int read = read(buffer, 0, buffer.length);
+                    return read == -1 ? 0 : read;
+                }
+
+                @Override
+                public boolean markSupported() {
+                    return false;
+                }
+            };
+        }
+
+        private void write(int b) {
+            if (mOut == null) return;
+            try {
+                mOut.write(b);
+            } catch (IOException e) {
+                abort();
+            }
+        }
+
+        private void write(byte[] buffer, int offset, int length) {
+            if (mOut == null) return;
+            try {
+                mOut.write(buffer, offset, length);
+            } catch (IOException e) {
+                abort();
+            }
+        }
+
+        void commit() {
+            if (mOut == null) return;
+            try {
+                mOut.close();
+                mOut = null;
+                ForecastResponseCache.this.commit(mTemp, keyFor(mUrl));
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Could not cache forecast", e);
+                abort();
+            }
+        }
+
+        void abort() {
+            if (mOut != null) {
+                try {
+                    mOut.close();
+                } catch (IOException ignored) {
+                }
+                mOut = null;
+            }
+            mTemp.delete();
+        }
+    }
+
+    /**
+     * The Cache-Control directives the cache cares about.
+     */
+    private static final class CacheControl {
+        private final boolean mNoStore;
+        private final long mMaxAgeMillis;
+        private final long mStaleWhileRevalidateMillis;
+
+        private CacheControl(boolean noStore, long maxAgeMillis, long staleWhileRevalidateMillis) {
+            mNoStore = noStore;
+            mMaxAgeMillis = maxAgeMillis;
+            mStaleWhileRevalidateMillis = staleWhileRevalidateMillis;
+        }
+
+        boolean isStorable() {
+            return !mNoStore && (mMaxAgeMillis > 0 || mStaleWhileRevalidateMillis > 0);
+        }
+
+        static CacheControl parse(@Nullable String header) {
+            boolean noStore = false;
+            boolean noCache = false;
+            long maxAgeSeconds = 0;
+            long staleWhileRevalidateSeconds = 0;
+            if (header != null) {
+                for (String directive : header.split(",")) {
+                    directive = directive.trim().toLowerCase(Locale.US);
+                    if (directive.equals(DIRECTIVE_NO_STORE)) {
+                        noStore = true;
+                    } else if (directive.equals(DIRECTIVE_NO_CACHE)) {
+                        noCache = true;
+                    } else if (directive.startsWith(DIRECTIVE_MAX_AGE)) {
+                        maxAgeSeconds = parseSeconds(directive.substring(DIRECTIVE_MAX_AGE.length()));
+                    } else if (directive.startsWith(DIRECTIVE_STALE_WHILE_REVALIDATE)) {
+                        staleWhileRevalidateSeconds = parseSeconds(
+                                directive.substring(DIRECTIVE_STALE_WHILE_REVALIDATE.length()));
+                    }
+                }
+            }
+            if (noCache) {
+                // Must always be revalidated, which the stored validators already take care of
+                maxAgeSeconds = 0;
+                staleWhileRevalidateSeconds = 0;
+            }
+            return new CacheControl(noStore, TimeUnit.SECONDS.toMillis(maxAgeSeconds),
+                    TimeUnit.SECONDS.toMillis(staleWhileRevalidateSeconds));
+        }
+
+        private static long parseSeconds(String value) {
+            try {
+                return Math.max(0, Long.parseLong(value.replace("\"", "")));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+}
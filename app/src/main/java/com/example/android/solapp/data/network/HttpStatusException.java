@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server answers a forecast request with an HTTP error status.
+ */
+class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int mStatusCode;
+
+    HttpStatusException(int statusCode) {
+        this(statusCode, "Server returned HTTP " + statusCode);
+    }
+
+    HttpStatusException(int statusCode, String message) {
+        super(message);
+        mStatusCode = statusCode;
+    }
+
+    int getStatusCode() {
+        return mStatusCode;
+    }
+}
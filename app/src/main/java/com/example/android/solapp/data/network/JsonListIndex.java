@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Byte offsets of the elements of an array in a JSON object's top level, found by scanning the
+ * bytes for brackets, commas and quotes without parsing any values. Runs of elements can then be
+ * parsed independently of each other.
+ */
+final class JsonListIndex {
+
+    private static final byte[] ARRAY_START = {'['};
+    private static final byte[] ARRAY_END = {']'};
+
+    private final byte[] mJson;
+    private final int mLength;
+    private final int mListStart;
+    private final int mListEnd;
+    // Offsets of the commas between the elements
+    private final int[] mSeparators;
+    private final int mCount;
+
+    private JsonListIndex(byte[] json, int length, int listStart, int listEnd, int[] separators,
+                          int count) {
+        mJson = json;
+        mLength = length;
+        mListStart = listStart;
+        mListEnd = listEnd;
+        mSeparators = separators;
+        mCount = count;
+    }
+
+    /**
+     * @param json   UTF-8 encoded JSON
+     * @param length The number of bytes of json to scan
+     * @param name   The name of the array in the top level object
+     * @return The index, or null if the top level object has no such array or the JSON is not
+     * well formed enough to tell
+     */
+    @Nullable
+    static JsonListIndex scan(byte[] json, int length, String name) {
+        byte[] key = name.getBytes(Charset.forName("UTF-8"));
+        int depth = 0;
+        boolean inString = false;
+        boolean expectKey = false;
+        int keyStart = -1;
+        boolean keyMatched = false;
+        boolean valueIsList = false;
+        int listStart = -1;
+        int listEnd = -1;
+        int[] separators = new int[64];
+        int separatorCount = 0;
+        boolean listHasElement = false;
+
+        for (int i = 0; i < length && listEnd < 0; i++) {
+            byte b = json[i];
+            if (inString) {
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    inString = false;
+                    if (keyStart >= 0) {
+                        keyMatched = regionEquals(json, keyStart, i, key);
+                        keyStart = -1;
+                    }
+                }
+                continue;
+            }
+            boolean inList = listStart >= 0 && depth == 2;
+            switch (b) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    break;
+                case ':':
+                    if (depth == 1) {
+                        valueIsList = keyMatched;
+                        keyMatched = false;
+                    }
+                    break;
+                case ',':
+                    if (depth == 1) {
+                        expectKey = true;
+                    } else if (inList) {
+                        if (separatorCount == separators.length) {
+                            separators = Arrays.copyOf(separators, separatorCount * 2);
+                        }
+                        separators[separatorCount++] = i;
+                    }
+                    break;
+                case '{':
+                case '[':
+                    if (inList) listHasElement = true;
+                    if (depth == 1 && b == '[' && valueIsList && listStart < 0) {
+                        listStart = i;
+                    }
+                    valueIsList = false;
+                    depth++;
+                    expectKey = depth == 1 && b == '{';
+                    break;
+                case '}':
+                case ']':
+                    if (depth == 2 && listStart >= 0 && b == ']') {
+                        listEnd = i;
+                    }
+                    depth--;
+                    if (depth < 0) return null;
+                    break;
+                case '"':
+                    inString = true;
+                    if (depth == 1 && expectKey) {
+                        keyStart = i + 1;
+                        expectKey = false;
+                    }
+                    // A string can be a value too
+                    if (inList) listHasElement = true;
+                    if (depth == 1) valueIsList = false;
+                    break;
+                default:
+                    if (inList) listHasElement = true;
+                    if (depth == 1) valueIsList = false;
+            }
+        }
+        if (listEnd < 0) return null;
+        return new JsonListIndex(json, length, listStart, listEnd, separators,
+                listHasElement ? separatorCount + 1 : 0);
+    }
+
+    private static boolean regionEquals(byte[] json, int start, int end, byte[] key) {
+        if (end - start != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (json[start + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return The JSON with the array emptied, so the rest of it can be parsed on its own.
+     */
+    InputStream openWithoutElements() {
+        return new SequenceInputStream(new ByteArrayInputStream(mJson, 0, mListStart + 1),
+                new ByteArrayInputStream(mJson, mListEnd, mLength - mListEnd));
+    }
+
+    /**
+     * @return A JSON array of the elements from {@code from} to {@code to}, exclusive.
+     */
+    InputStream openElements(int from, int to) {
+        int start = from == 0 ? mListStart + 1 : mSeparators[from - 1] + 1;
+        int end = to == mCount ? mListEnd : mSeparators[to - 1];
+        return new SequenceInputStream(new ByteArrayInputStream(ARRAY_START),
+                new SequenceInputStream(new ByteArrayInputStream(mJson, start, end - start),
+                        new ByteArrayInputStream(ARRAY_END)));
+    }
+}
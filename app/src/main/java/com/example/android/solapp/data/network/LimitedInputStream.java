@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link FilterInputStream} which fails with a {@link ResponseTooLargeException} as soon as more
+ * than a given number of bytes has been read through it.
+ */
+class LimitedInputStream extends FilterInputStream {
+
+    private final long mMaxBytes;
+    private long mCount;
+
+    LimitedInputStream(InputStream in, long maxBytes) {
+        super(in);
+        mMaxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) count(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        // Never asks for more than one byte past the limit
+        int read = super.read(buffer, offset, (int) Math.min(length, getAllowance()));
+        if (read != -1) count(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(Math.min(n, getAllowance()));
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return The bytes left before the limit plus one, without overflowing for a huge limit
+     */
+    private long getAllowance() {
+        long remaining = mMaxBytes - mCount;
+        return remaining == Long.MAX_VALUE ? remaining : remaining + 1;
+    }
+
+    private void count(long bytes) throws ResponseTooLargeException {
+        mCount += bytes;
+        if (mCount > mMaxBytes) {
+            throw new ResponseTooLargeException("Response body exceeds " + mMaxBytes + " bytes");
+        }
+    }
+}
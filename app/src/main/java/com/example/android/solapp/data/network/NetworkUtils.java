@@ -1,6 +1,8 @@
 package com.example.android.sunshine.data.network;
 
 import android.net.Uri;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 import java.io.IOException;
@@ -8,7 +10,6 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
 
 final class NetworkUtils {
 
@@ -16,24 +17,175 @@ final class NetworkUtils {
     private static final String DYNAMIC_WEATHER_URL = "https://andfun-weather.udacity.com/weather";
     private static final String STATIC_WEATHER_URL = "https://andfun-weather.udacity.com/staticweather";
     private static final String FORECAST_BASE_URL = DYNAMIC_WEATHER_URL;
-    private static final String format = "json";
     private static final String units = "metric";
     private static final String QUERY_PARAM = "q";
     private static final String FORMAT_PARAM = "mode";
     private static final String UNITS_PARAM = "units";
     private static final String DAYS_PARAM = "cnt";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String HEADER_ACCEPT = "Accept";
+    // Sent with JSON requests, a server which supports CBOR answers in it
+    private static final String ACCEPT_CBOR_OR_JSON = "application/cbor, application/json;q=0.9";
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
 
-    static URL getUrl() {
-        String locationQuery = "Mountain View, CA";
-        return buildUrlWithLocationQuery(locationQuery);
+    // A full forecast is a few kilobytes, these only stop a server that has gone wrong
+    static final long DEFAULT_MAX_BODY_BYTES = 4 * 1024 * 1024;
+    static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final ForecastDecoder JSON_DECODER = new OpenWeatherJsonParser();
+    private static final ForecastDecoder CBOR_DECODER = new OpenWeatherCborParser();
+
+    private static volatile String sForecastBaseUrl = FORECAST_BASE_URL;
+    // Serves the same forecasts, requests that are slow on the primary one are hedged to it
+    private static volatile String sHedgeBaseUrl = STATIC_WEATHER_URL;
+    // JSON is asked for, offering CBOR, until the server has answered in CBOR; a server that
+    // rejects CBOR then gets JSON from then on
+    private static volatile ForecastDecoder sPreferredDecoder = JSON_DECODER;
+    private static volatile boolean sOfferCbor = true;
+    @Nullable
+    private static volatile SyncStateStore sFormatStore;
+    private static volatile ForecastDecoder sJsonDecoder = JSON_DECODER;
+    private static volatile long sMaxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+    private static volatile int sMaxEntries = DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Points the forecast requests at another server, such as a local replay server.
+     */
+    @VisibleForTesting
+    static void setForecastBaseUrl(String baseUrl) {
+        sForecastBaseUrl = baseUrl;
+    }
+
+    @VisibleForTesting
+    static String getForecastBaseUrl() {
+        return sForecastBaseUrl;
+    }
+
+    /**
+     * Points hedged requests at another server; null turns hedging off.
+     */
+    @VisibleForTesting
+    static void setHedgeBaseUrl(@Nullable String baseUrl) {
+        sHedgeBaseUrl = baseUrl;
+    }
+
+    /**
+     * Restores the format negotiated with the server before, and saves the outcome of every
+     * negotiation from now on.
+     */
+    static void setFormatStore(SyncStateStore formatStore) {
+        sFormatStore = formatStore;
+        applyFormat(formatStore.getNegotiatedFormat());
+    }
+
+    /**
+     * Asks for the given format, as if the server had been found to answer in it.
+     *
+     * @param format The format, null to ask for JSON and offer CBOR as before any negotiation
+     */
+    @VisibleForTesting
+    static void setPreferredFormat(@Nullable String format) {
+        applyFormat(format);
+    }
+
+    /**
+     * @return The format asked for, null while asking for JSON and offering CBOR
+     */
+    @VisibleForTesting
+    @Nullable
+    static String getPreferredFormat() {
+        return sOfferCbor ? null : sPreferredDecoder.getFormat();
+    }
+
+    /**
+     * @param format The negotiated format, null to ask for JSON and offer CBOR
+     */
+    private static void applyFormat(@Nullable String format) {
+        sPreferredDecoder = OpenWeatherCborParser.FORMAT.equals(format) ? CBOR_DECODER : JSON_DECODER;
+        sOfferCbor = format == null;
+    }
+
+    private static void negotiated(String format) {
+        applyFormat(format);
+        SyncStateStore formatStore = sFormatStore;
+        if (formatStore != null) {
+            formatStore.setNegotiatedFormat(format);
+        }
+    }
+
+    /**
+     * Sets how much of a response is read before giving up with a
+     * {@link ResponseTooLargeException}.
+     *
+     * @param maxBodyBytes The most bytes of a decoded response body
+     * @param maxEntries   The most forecast entries
+     */
+    static void setResponseLimits(long maxBodyBytes, int maxEntries) {
+        sMaxBodyBytes = maxBodyBytes;
+        sMaxEntries = maxEntries;
+    }
+
+    /**
+     * Turns decoding large JSON forecasts on several threads on or off. The whole body of a JSON
+     * response is then read before it is decoded.
+     *
+     * @param threads The threads to decode on, 1 to decode on the calling thread only
+     */
+    static synchronized void setParallelDecoding(int threads) {
+        ForecastDecoder previous = sJsonDecoder;
+        int previousThreads = previous instanceof ParallelJsonDecoder
+                ? ((ParallelJsonDecoder) previous).getThreads() : 1;
+        // Decodes may be running on the current decoder's threads
+        if (Math.max(threads, 1) == previousThreads) return;
+        sJsonDecoder = threads > 1 ? new ParallelJsonDecoder(threads) : JSON_DECODER;
+        if (previous instanceof ParallelJsonDecoder) {
+            ((ParallelJsonDecoder) previous).shutdown();
+        }
+    }
+
+    static URL getUrl(String locationQuery) {
+        return getUrl(locationQuery, SyncWindow.full());
+    }
+
+    /**
+     * @return The url requesting the days from today until the end of the given window. Its
+     * count is the window's own when the window starts today. The server has no way to skip days,
+     * so the days before a later window are downloaded all the same, and the decoder skips them.
+     */
+    static URL getUrl(String locationQuery, SyncWindow window) {
+        return buildUrlWithLocationQuery(locationQuery, window);
+    }
+
+    /**
+     * @return The same request sent to the hedge server, or null if there is none
+     */
+    @Nullable
+    static URL getHedgeUrl(URL url) {
+        String hedgeBaseUrl = sHedgeBaseUrl;
+        String forecastBaseUrl = sForecastBaseUrl;
+        String spec = url.toString();
+        if (hedgeBaseUrl == null || !spec.startsWith(forecastBaseUrl)) return null;
+        try {
+            return new URL(hedgeBaseUrl + spec.substring(forecastBaseUrl.length()));
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+            return null;
+        }
     }
 
-    private static URL buildUrlWithLocationQuery(String locationQuery) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+    private static URL buildUrlWithLocationQuery(String locationQuery, SyncWindow window) {
+        Uri weatherQueryUri = Uri.parse(sForecastBaseUrl).buildUpon()
                 .appendQueryParameter(QUERY_PARAM, locationQuery)
-                .appendQueryParameter(FORMAT_PARAM, format)
+                .appendQueryParameter(FORMAT_PARAM, sPreferredDecoder.getFormat())
                 .appendQueryParameter(UNITS_PARAM, units)
-                .appendQueryParameter(DAYS_PARAM, Integer.toString(WeatherNetworkDataSource.NUM_DAYS))
+                .appendQueryParameter(DAYS_PARAM,
+                        Integer.toString(window.getFirstDay() + window.getDayCount()))
                 .build();
 
         try {
@@ -46,23 +198,203 @@ final class NetworkUtils {
         }
     }
 
-    static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+    /**
+     * Streams the response body of the given url straight into the decoder for its Content-Type,
+     * without materializing it as a String first.
+     * <p>
+     * When allowed, a body from the response cache is used instead of the network, marked as
+     * {@link WeatherResponse#isStale()} if it is past its max-age. Otherwise the request is
+     * conditional on the validators stored for the url; when the server answers 304 the body is
+     * not read at all and {@link WeatherResponse#notModified()} is returned. The validators of a
+     * successfully parsed response are stored for the next request, and the body is cached if its
+     * Cache-Control allows it.
+     * <p>
+     * JSON requests offer CBOR as well until the format has been negotiated; once the server
+     * answers one in CBOR, CBOR is asked for from then on. If the server rejects the requested
+     * format, the request is repeated once in JSON, which is then used for every following
+     * request. The negotiated format is kept in the store of {@link #setFormatStore}.
+     * <p>
+     * A body larger than {@link #setResponseLimits(long, int)} allows is abandoned as soon as
+     * that is known, with a {@link ResponseTooLargeException}. So is a payload which reports an
+     * error in its "cod" field, with a {@link ForecastErrorException}, and an error status is
+     * thrown as an {@link HttpStatusException} without reading the body at all.
+     */
+    static WeatherResponse getResponseFromHttpUrl(WeatherHttpClient client, URL url,
+                                                  String locationQuery,
+                                                  ResponseValidatorStore validatorStore,
+                                                  ForecastResponseCache cache,
+                                                  boolean allowCache)
+            throws IOException {
+        return getResponseFromHttpUrl(client, url, locationQuery, 0, validatorStore, cache,
+                allowCache, null);
+    }
+
+    /**
+     * @param firstEntry The entries before this one are skipped over without being decoded
+     * @param cancellation Aborts the request from another thread
+     * @see #getResponseFromHttpUrl(WeatherHttpClient, URL, String, ResponseValidatorStore,
+     * ForecastResponseCache, boolean)
+     */
+    static WeatherResponse getResponseFromHttpUrl(
+            WeatherHttpClient client, URL url, String locationQuery, int firstEntry,
+            ResponseValidatorStore validatorStore, ForecastResponseCache cache,
+            boolean allowCache, @Nullable WeatherHttpClient.CancellationSignal cancellation)
+            throws IOException {
+        if (allowCache) {
+            WeatherResponse cached = getResponseFromCache(url, locationQuery, firstEntry, cache);
+            if (cached != null) return cached;
+        }
+
+        WeatherHttpClient.Call call = client.newCall(url, cancellation);
+        ForecastResponseCache.Editor cacheEditor = null;
+        boolean completed = false;
         try {
-            InputStream in = urlConnection.getInputStream();
+            String eTag = validatorStore.getETag(url);
+            if (eTag != null) {
+                call.setRequestProperty(HEADER_IF_NONE_MATCH, eTag);
+            }
+            String lastModified = validatorStore.getLastModified(url);
+            if (lastModified != null) {
+                call.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+            }
+            boolean json = JSON_DECODER.getFormat().equals(getFormat(url));
+            if (json && sOfferCbor) {
+                call.setRequestProperty(HEADER_ACCEPT, ACCEPT_CBOR_OR_JSON);
+            }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+            if (call.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                Log.d(TAG, "Forecast not modified since the last sync");
+                cache.refresh(url, call.getHeaderField(HEADER_CACHE_CONTROL));
+                completed = true;
+                return WeatherResponse.notModified();
+            }
+            if (isFormatRejected(call.getResponseCode(), url)) {
+                // Retried in JSON below, once this call is closed
+                completed = true;
+            } else {
+                if (call.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                    throw new HttpStatusException(call.getResponseCode());
+                }
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
+                long maxBodyBytes = sMaxBodyBytes;
+                checkContentLength(call.getHeaderField(HEADER_CONTENT_LENGTH), maxBodyBytes);
+                String contentType = call.getHeaderField(HEADER_CONTENT_TYPE);
+                // Limits the decoded bytes, so a small compressed body cannot inflate without end
+                InputStream body = new LimitedInputStream(call.getBody(), maxBodyBytes);
+                cacheEditor = cache.edit(url, call.getHeaderField(HEADER_CACHE_CONTROL),
+                        contentType);
+                if (cacheEditor != null) {
+                    body = cacheEditor.tee(body);
+                }
+                ForecastDecoder decoder = decoderFor(contentType);
+                WeatherResponse response =
+                        decoder.decode(body, locationQuery, firstEntry, sMaxEntries);
+                if (json && decoder == CBOR_DECODER && sOfferCbor) {
+                    Log.d(TAG, "Server supports the " + CBOR_DECODER.getFormat() + " format");
+                    negotiated(CBOR_DECODER.getFormat());
+                }
+                validatorStore.save(url, call.getHeaderField(HEADER_ETAG),
+                        call.getHeaderField(HEADER_LAST_MODIFIED));
+                if (cacheEditor != null) {
+                    cacheEditor.commit();
+                    cacheEditor = null;
+                }
+                completed = true;
+                return response;
             }
-            scanner.close();
-            return response;
         } finally {
-            urlConnection.disconnect();
+            if (cacheEditor != null) {
+                cacheEditor.abort();
+            }
+            call.close(completed);
+        }
+
+        Log.w(TAG, "Server rejected the " + getFormat(url) + " format, falling back to JSON");
+        negotiated(JSON_DECODER.getFormat());
+        return getResponseFromHttpUrl(client, withFormat(url, JSON_DECODER.getFormat()),
+                locationQuery, firstEntry, validatorStore, cache, allowCache, cancellation);
+    }
+
+    /**
+     * @param firstEntry The entries before this one are skipped over without being decoded
+     * @return The cached response for the url, marked as stale if it is past its max-age, or
+     * null if there is none
+     */
+    @Nullable
+    static WeatherResponse getResponseFromCache(URL url, String locationQuery, int firstEntry,
+                                                ForecastResponseCache cache) {
+        ForecastResponseCache.Entry entry = cache.get(url);
+        if (entry == null) return null;
+        try {
+            WeatherResponse response = decoderFor(entry.getContentType())
+                    .decode(new LimitedInputStream(entry.openBody(), sMaxBodyBytes),
+                            locationQuery, firstEntry, sMaxEntries);
+            Log.d(TAG, "Forecast served from the cache");
+            return entry.isFresh(System.currentTimeMillis()) ? response : response.asStale();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read cached forecast", e);
+            return null;
+        }
+    }
+
+    /**
+     * Fails before reading a body the server says is too large. Compressed bodies are only caught
+     * once they have been inflated past the limit.
+     */
+    private static void checkContentLength(@Nullable String contentLength, long maxBodyBytes)
+            throws ResponseTooLargeException {
+        if (contentLength == null) return;
+        try {
+            if (Long.parseLong(contentLength.trim()) > maxBodyBytes) {
+                throw new ResponseTooLargeException("Response body of " + contentLength
+                        + " bytes exceeds " + maxBodyBytes);
+            }
+        } catch (NumberFormatException e) {
+            // Read it and count instead
+        }
+    }
+
+    /**
+     * @return The decoder for a response body. A server that does not know the requested format
+     * may send any other, anything that isn't recognized is tried as JSON.
+     */
+    private static ForecastDecoder decoderFor(@Nullable String contentType) {
+        return CBOR_DECODER.canDecode(contentType) ? CBOR_DECODER : sJsonDecoder;
+    }
+
+    private static boolean isFormatRejected(int responseCode, URL url) {
+        boolean rejection = responseCode == HttpURLConnection.HTTP_NOT_ACCEPTABLE
+                || responseCode == HTTP_UNSUPPORTED_MEDIA_TYPE
+                || responseCode == HttpURLConnection.HTTP_NOT_IMPLEMENTED;
+        String format = getFormat(url);
+        return rejection && format != null && !JSON_DECODER.getFormat().equals(format);
+    }
+
+    @Nullable
+    private static String getFormat(URL url) {
+        return getQueryParameter(url, FORMAT_PARAM);
+    }
+
+    @Nullable
+    private static String getQueryParameter(URL url, String name) {
+        String query = url.getQuery();
+        if (query == null) return null;
+        String prefix = name + "=";
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(prefix)) return parameter.substring(prefix.length());
+        }
+        return null;
+    }
+
+    private static URL withFormat(URL url, String format) throws MalformedURLException {
+        String prefix = FORMAT_PARAM + "=";
+        StringBuilder spec = new StringBuilder(url.getProtocol()).append("://")
+                .append(url.getAuthority()).append(url.getPath());
+        char separator = '?';
+        for (String parameter : url.getQuery().split("&")) {
+            spec.append(separator).append(parameter.startsWith(prefix) ? prefix + format : parameter);
+            separator = '&';
         }
+        return new URL(spec.toString());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.Nullable;
+
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.utilities.SolAppDateUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Parser for OpenWeatherMap data encoded as CBOR. The payload has the same structure as the JSON
+ * one, but numbers arrive as binary integers and floats, so nothing is parsed from text.
+ */
+final class OpenWeatherCborParser implements ForecastDecoder {
+
+    static final String FORMAT = "cbor";
+    private static final String CONTENT_TYPE = "application/cbor";
+
+    // Weather information. Each day's forecast info is an element of the "list" array
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_WEATHER_ID = "id";
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    @Override
+    public String getFormat() {
+        return FORMAT;
+    }
+
+    @Override
+    public boolean canDecode(@Nullable String contentType) {
+        return contentType != null
+                && contentType.toLowerCase(Locale.US).startsWith(CONTENT_TYPE);
+    }
+
+    @Override
+    public WeatherResponse decode(InputStream body, String location, int firstEntry,
+                                  int maxEntries) throws IOException {
+        CborReader reader = new CborReader(body);
+        try {
+            ListWeatherEntry[] weatherForecast = null;
+            ForecastDetails.Builder details = new ForecastDetails.Builder();
+
+            reader.beginMap();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case OWM_MESSAGE_CODE:
+                        // An error payload is abandoned before any more of it is read
+                        int messageCode = readMessageCode(reader);
+                        if (messageCode != HttpURLConnection.HTTP_OK) {
+                            throw new ForecastErrorException(messageCode);
+                        }
+                        break;
+                    case OWM_LIST:
+                        weatherForecast = fromCbor(reader, firstEntry, maxEntries, details);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endMap();
+
+            if (weatherForecast == null) {
+                throw new MalformedCborException("Forecast has no \"" + OWM_LIST + "\" array");
+            }
+            return new WeatherResponse(location, weatherForecast, details.build());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The server sends the code as a string in JSON, an encoder may keep it or make it a number.
+     */
+    private static int readMessageCode(CborReader reader) throws IOException {
+        if (reader.peek() != CborReader.TYPE_TEXT_STRING) {
+            return reader.nextInt();
+        }
+        try {
+            return Integer.parseInt(reader.nextString());
+        } catch (NumberFormatException e) {
+            throw new MalformedCborException("Invalid \"" + OWM_MESSAGE_CODE + "\"");
+        }
+    }
+
+    private static ListWeatherEntry[] fromCbor(final CborReader reader, int firstEntry,
+                                               int maxEntries, ForecastDetails.Builder details)
+            throws IOException {
+        List<ListWeatherEntry> weatherEntries =
+                new ArrayList<>(WeatherNetworkDataSource.NUM_DAYS);
+
+        long startDay = SolAppDateUtils.getEpochDayForToday();
+
+        reader.beginArray();
+        for (int entry = 0; reader.hasNext(); entry++) {
+            if (entry == maxEntries) {
+                throw new ResponseTooLargeException(
+                        "Forecast has more than " + maxEntries + " entries");
+            }
+            if (entry < firstEntry) {
+                reader.skipValue();
+            } else {
+                weatherEntries.add(fromCbor(reader, startDay + entry, details));
+            }
+        }
+        reader.endArray();
+
+        return weatherEntries.toArray(new ListWeatherEntry[weatherEntries.size()]);
+    }
+
+    private static ListWeatherEntry fromCbor(final CborReader reader, long epochDay,
+                                           ForecastDetails.Builder details) throws IOException {
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+        int weatherId = 0;
+        double max = 0;
+        double min = 0;
+
+        reader.beginMap();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case OWM_PRESSURE:
+                    pressure = reader.nextDouble();
+                    break;
+                case OWM_HUMIDITY:
+                    humidity = (int) reader.nextDouble();
+                    break;
+                case OWM_WINDSPEED:
+                    windSpeed = reader.nextDouble();
+                    break;
+                case OWM_WIND_DIRECTION:
+                    windDirection = reader.nextDouble();
+                    break;
+                case OWM_WEATHER:
+                    weatherId = readWeatherId(reader);
+                    break;
+                case OWM_TEMPERATURE:
+                    reader.beginMap();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case OWM_MAX:
+                                max = reader.nextDouble();
+                                break;
+                            case OWM_MIN:
+                                min = reader.nextDouble();
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endMap();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endMap();
+
+        details.add(humidity, pressure, windSpeed, windDirection);
+        return new ListWeatherEntry(0, weatherId, epochDay, max, min);
+    }
+
+    /**
+     * Reads the id of the first element of the "weather" array, skipping any other elements.
+     */
+    private static int readWeatherId(final CborReader reader) throws IOException {
+        int weatherId = 0;
+        boolean first = true;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (!first) {
+                reader.skipValue();
+                continue;
+            }
+            first = false;
+            reader.beginMap();
+            while (reader.hasNext()) {
+                if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                    weatherId = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endMap();
+        }
+        reader.endArray();
+        return weatherId;
+    }
+}
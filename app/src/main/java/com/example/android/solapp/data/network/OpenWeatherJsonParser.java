@@ -16,21 +16,26 @@
 package com.example.android.sunshine.data.network;
 
 import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.MalformedJsonException;
 
-import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.database.ListWeatherEntry;
 import com.example.android.sunshine.utilities.SolAppDateUtils;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.net.HttpURLConnection;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Parser for OpenWeatherMap JSON data.
  */
-final class OpenWeatherJsonParser {
+final class OpenWeatherJsonParser implements ForecastDecoder {
+
+    static final String FORMAT = "json";
 
     // Weather information. Each day's forecast info is an element of the "list" array
     private static final String OWM_LIST = "list";
@@ -46,72 +51,203 @@ final class OpenWeatherJsonParser {
     private static final String OWM_WEATHER_ID = "id";
     private static final String OWM_MESSAGE_CODE = "cod";
 
-    private static boolean hasHttpError(JSONObject forecastJson) throws JSONException {
-        if (forecastJson.has(OWM_MESSAGE_CODE)) {
-            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-            switch (errorCode) {
-                case HttpURLConnection.HTTP_OK:
-                    return false;
-                case HttpURLConnection.HTTP_NOT_FOUND:
-                    // Location invalid
-                default:
-                    // Server probably down
-                    return true;
-            }
-        }
-        return false;
+    @Override
+    public String getFormat() {
+        return FORMAT;
     }
 
-    private static WeatherEntry[] fromJson(final JSONObject forecastJson) throws JSONException {
-        JSONArray jsonWeatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-        WeatherEntry[] weatherEntries = new WeatherEntry[jsonWeatherArray.length()];
-
-        long normalizedUtcStartDay = SolAppDateUtils.getNormalizedUtcMsForToday();
+    /**
+     * JSON is the fallback, so anything that is not positively another format is tried as JSON.
+     */
+    @Override
+    public boolean canDecode(@Nullable String contentType) {
+        if (contentType == null) return true;
+        contentType = contentType.toLowerCase(Locale.US);
+        return contentType.startsWith("application/json") || contentType.startsWith("text/");
+    }
 
-        for (int i = 0; i < jsonWeatherArray.length(); i++) {
-            JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
-            long dateTimeMillis = normalizedUtcStartDay + SolAppDateUtils.DAY_IN_MILLIS * i;
-            WeatherEntry weather = fromJson(dayForecast, dateTimeMillis);
+    @Override
+    public WeatherResponse decode(InputStream body, String location, int firstEntry,
+                                  int maxEntries) throws IOException {
+        return parse(new Utf8Reader(body), location, firstEntry, maxEntries);
+    }
 
-            weatherEntries[i] = weather;
+    /**
+     * Reads a forecast list, dating its entries on consecutive days.
+     *
+     * @param startDay The epoch day of the first entry
+     * @param firstEntry The entries before this one are skipped
+     */
+    private static ListWeatherEntry[] fromJson(final JsonReader reader, long startDay,
+                                               int firstEntry, int maxEntries,
+                                               ForecastDetails.Builder details)
+            throws IOException {
+        List<ListWeatherEntry> weatherEntries =
+                new ArrayList<>(WeatherNetworkDataSource.NUM_DAYS);
+
+        reader.beginArray();
+        for (int entry = 0; reader.hasNext(); entry++) {
+            if (entry == maxEntries) {
+                throw new ResponseTooLargeException(
+                        "Forecast has more than " + maxEntries + " entries");
+            }
+            if (entry < firstEntry) {
+                reader.skipValue();
+            } else {
+                weatherEntries.add(fromJson(reader, startDay + entry, details));
+            }
         }
-        return weatherEntries;
-    }
+        reader.endArray();
 
-    private static WeatherEntry fromJson(final JSONObject dayForecast,
-                                         long dateTimeMillis) throws JSONException {
+        return weatherEntries.toArray(new ListWeatherEntry[weatherEntries.size()]);
+    }
 
-        double pressure = dayForecast.getDouble(OWM_PRESSURE);
-        int humidity = dayForecast.getInt(OWM_HUMIDITY);
-        double windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-        double windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+    /**
+     * Reads the list fields of an entry, and adds its detail fields to the details.
+     */
+    private static ListWeatherEntry fromJson(final JsonReader reader, long epochDay,
+                                           ForecastDetails.Builder details) throws IOException {
+        double pressure = 0;
+        double humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+        int weatherId = 0;
+        double max = 0;
+        double min = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case OWM_PRESSURE:
+                    pressure = reader.nextDouble();
+                    break;
+                case OWM_HUMIDITY:
+                    humidity = reader.nextDouble();
+                    break;
+                case OWM_WINDSPEED:
+                    windSpeed = reader.nextDouble();
+                    break;
+                case OWM_WIND_DIRECTION:
+                    windDirection = reader.nextDouble();
+                    break;
+                case OWM_WEATHER:
+                    weatherId = readWeatherId(reader);
+                    break;
+                case OWM_TEMPERATURE:
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case OWM_MAX:
+                                max = reader.nextDouble();
+                                break;
+                            case OWM_MIN:
+                                min = reader.nextDouble();
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-        JSONObject weatherObject =
-                dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+        details.add(humidity, pressure, windSpeed, windDirection);
+        return new ListWeatherEntry(0, weatherId, epochDay, max, min);
+    }
 
-        int weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+    /**
+     * Reads the id of the first element of the "weather" array, skipping any other elements.
+     */
+    private static int readWeatherId(final JsonReader reader) throws IOException {
+        int weatherId = 0;
+        boolean first = true;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (!first) {
+                reader.skipValue();
+                continue;
+            }
+            first = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                    weatherId = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return weatherId;
+    }
 
-        JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-        double max = temperatureObject.getDouble(OWM_MAX);
-        double min = temperatureObject.getDouble(OWM_MIN);
+    /**
+     * Parses a JSON array of forecast entries, such as a run of elements of the "list" array.
+     *
+     * @param startDay The epoch day of the first entry
+     */
+    static ListWeatherEntry[] parseList(InputStream json, long startDay,
+                                        ForecastDetails.Builder details) throws IOException {
+        JsonReader reader = new JsonReader(new Utf8Reader(json));
+        try {
+            return fromJson(reader, startDay, 0, Integer.MAX_VALUE, details);
+        } finally {
+            reader.close();
+        }
+    }
 
-        return new WeatherEntry(weatherId, new Date(dateTimeMillis), max, min,
-                humidity, pressure, windSpeed, windDirection);
+    /**
+     * @return The epoch day of the first entry, which is today
+     */
+    static long getStartDay() {
+        return SolAppDateUtils.getEpochDayForToday();
     }
 
-    @Nullable
-    WeatherResponse parse(final String forecastJsonStr) throws JSONException {
-        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+    /**
+     * Parses the forecast straight from the response stream. Each element of the "list" array
+     * becomes a {@link ListWeatherEntry} as soon as it has been read, so the payload is never held
+     * in memory as a String or as a JSON tree. The detail fields are kept as plain numbers in
+     * {@link ForecastDetails}, the full entries are only built when they are stored.
+     */
+    static WeatherResponse parse(final Reader forecastJsonReader, String location,
+                                 int firstEntry, int maxEntries) throws IOException {
+        JsonReader reader = new JsonReader(forecastJsonReader);
+        try {
+            ListWeatherEntry[] weatherForecast = null;
+            ForecastDetails.Builder details = new ForecastDetails.Builder();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case OWM_MESSAGE_CODE:
+                        // An error payload is abandoned before any more of it is read
+                        int messageCode = reader.nextInt();
+                        if (messageCode != HttpURLConnection.HTTP_OK) {
+                            throw new ForecastErrorException(messageCode);
+                        }
+                        break;
+                    case OWM_LIST:
+                        weatherForecast = fromJson(reader, getStartDay(), firstEntry, maxEntries,
+                                details);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
 
-        // Is there an error?
-        if (hasHttpError(forecastJson)) {
-            return null;
+            if (weatherForecast == null) {
+                throw new MalformedJsonException("Forecast has no \"" + OWM_LIST + "\" array");
+            }
+            return new WeatherResponse(location, weatherForecast, details.build());
+        } finally {
+            reader.close();
         }
-
-        WeatherEntry[] weatherForecast = fromJson(forecastJson);
-
-        return new WeatherResponse(weatherForecast);
     }
-}
\ No newline at end of file
+}
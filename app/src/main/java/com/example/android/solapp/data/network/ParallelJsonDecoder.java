@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.Nullable;
+import android.util.MalformedJsonException;
+
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Decodes large JSON forecasts on several threads.
+ * <p>
+ * The body is read into a buffer the decoder keeps between decodes, and the elements of its
+ * "list" array are located with a {@link JsonListIndex}. The rest of the payload is parsed
+ * first, so an error code still fails before any entry is parsed. Then runs of the elements
+ * not skipped are parsed in parallel, each dated from the same start day, and put back together in order. The
+ * result is the same as the one of {@link OpenWeatherJsonParser}, which decodes smaller forecasts
+ * on the calling thread.
+ */
+final class ParallelJsonDecoder implements ForecastDecoder {
+
+    // Below this, handing the elements to other threads costs more than it saves
+    static final int MIN_PARALLEL_ENTRIES = 512;
+    // More runs than threads, so a slow run does not leave the other threads idle
+    private static final int RUNS_PER_THREAD = 4;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    // Bodies larger than this are rare, their buffer is left to be collected
+    private static final int MAX_KEPT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final OpenWeatherJsonParser mSequentialDecoder = new OpenWeatherJsonParser();
+    private final int mThreads;
+    private final ExecutorService mExecutor;
+    // Read into by every decode in turn, so a steady sync does not allocate a body's worth each
+    private byte[] mBuffer;
+
+    ParallelJsonDecoder(int threads) {
+        mThreads = threads;
+        mExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ParallelJsonDecoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    int getThreads() {
+        return mThreads;
+    }
+
+    @Override
+    public String getFormat() {
+        return mSequentialDecoder.getFormat();
+    }
+
+    @Override
+    public boolean canDecode(@Nullable String contentType) {
+        return mSequentialDecoder.canDecode(contentType);
+    }
+
+    @Override
+    public WeatherResponse decode(InputStream body, String location, int firstEntry,
+                                  int maxEntries) throws IOException {
+        byte[] json = takeBuffer();
+        try {
+            int length = 0;
+            int read;
+            while ((read = body.read(json, length, json.length - length)) != -1) {
+                length += read;
+                if (length == json.length) {
+                    json = Arrays.copyOf(json, json.length * 2);
+                }
+            }
+            return decode(json, length, location, firstEntry, maxEntries);
+        } finally {
+            // Nothing decoded refers to the body, but a run given up on when the decode was
+            // interrupted may still be reading it
+            if (!Thread.currentThread().isInterrupted()) giveBack(json);
+        }
+    }
+
+    private WeatherResponse decode(byte[] json, int length, String location, int firstEntry,
+                                   int maxEntries) throws IOException {
+        JsonListIndex index = JsonListIndex.scan(json, length, "list");
+        if (index == null || index.getCount() - firstEntry < MIN_PARALLEL_ENTRIES) {
+            // Also leaves anything malformed to be reported the usual way
+            return mSequentialDecoder.decode(new ByteArrayInputStream(json, 0, length), location,
+                    firstEntry, maxEntries);
+        }
+        int count = index.getCount();
+        if (count > maxEntries) {
+            throw new ResponseTooLargeException("Forecast has more than " + maxEntries
+                    + " entries");
+        }
+
+        // Reports an error payload, the entries themselves are decoded below
+        OpenWeatherJsonParser.parse(new Utf8Reader(index.openWithoutElements()), location, 0,
+                maxEntries);
+        long startDay = OpenWeatherJsonParser.getStartDay() + firstEntry;
+
+        // Only the elements from the first entry on are handed out, the others are never parsed
+        int elements = count - firstEntry;
+        int runs = Math.min(elements, mThreads * RUNS_PER_THREAD);
+        ForecastDetails.Builder[] runDetails = new ForecastDetails.Builder[runs];
+        List<Callable<ListWeatherEntry[]>> tasks = new ArrayList<>(runs);
+        for (int run = 0; run < runs; run++) {
+            int from = (int) ((long) elements * run / runs);
+            int to = (int) ((long) elements * (run + 1) / runs);
+            ForecastDetails.Builder details = new ForecastDetails.Builder();
+            runDetails[run] = details;
+            tasks.add(() -> OpenWeatherJsonParser.parseList(
+                    index.openElements(firstEntry + from, firstEntry + to), startDay + from,
+                    details));
+        }
+
+        ListWeatherEntry[] weatherForecast = new ListWeatherEntry[elements];
+        ForecastDetails.Builder details = new ForecastDetails.Builder();
+        try {
+            List<Future<ListWeatherEntry[]>> results = mExecutor.invokeAll(tasks);
+            for (int run = 0; run < runs; run++) {
+                ListWeatherEntry[] entries = results.get(run).get();
+                int from = (int) ((long) elements * run / runs);
+                if (entries.length != (int) ((long) elements * (run + 1) / runs) - from) {
+                    // The scan and the parser disagree about where the elements are
+                    throw new MalformedJsonException("Malformed forecast list");
+                }
+                System.arraycopy(entries, 0, weatherForecast, from, entries.length);
+                details.addAll(runDetails[run]);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding the forecast");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        } catch (RejectedExecutionException e) {
+            // Shut down while the body was read, this decoder was replaced
+            return mSequentialDecoder.decode(new ByteArrayInputStream(json, 0, length), location,
+                    firstEntry, maxEntries);
+        }
+        return new WeatherResponse(location, weatherForecast, details.build());
+    }
+
+    /**
+     * @return The buffer kept from an earlier decode, or a new one if another decode has it
+     */
+    private synchronized byte[] takeBuffer() {
+        byte[] buffer = mBuffer;
+        mBuffer = null;
+        return buffer != null ? buffer : new byte[INITIAL_BUFFER_SIZE];
+    }
+
+    private synchronized void giveBack(byte[] buffer) {
+        if (buffer.length <= MAX_KEPT_BUFFER_SIZE
+                && (mBuffer == null || mBuffer.length < buffer.length)) {
+            mBuffer = buffer;
+        }
+    }
+
+    /**
+     * Lets the threads of this decoder finish once it is no longer used.
+     */
+    void shutdown() {
+        mExecutor.shutdown();
+    }
+}
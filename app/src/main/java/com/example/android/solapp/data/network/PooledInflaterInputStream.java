@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Inflates a gzip or deflate response body with an {@link Inflater} and a {@link BufferPool}
+ * buffer that are both reused from one body to the next, where a GZIPInputStream or a plain
+ * InflaterInputStream would allocate a new buffer and a new native inflater for each.
+ * <p>
+ * Only the first member of a gzip body is read, a server never sends more. Closing the stream
+ * gives the inflater and the buffer back, it must be closed once it is no longer read.
+ */
+final class PooledInflaterInputStream extends InflaterInputStream {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int GZIP_DEFLATED = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    // MTIME, XFL and OS
+    private static final int GZIP_HEADER_SKIPPED_BYTES = 6;
+
+    // One inflater per buffer the fetches can hold at once
+    private static final int MAX_POOLED_INFLATERS = BufferPool.MAX_POOLED_BUFFERS;
+    // A gzip body has no zlib wrapper around its deflate data, a deflate body has one
+    private static final InflaterPool sGzipInflaters = new InflaterPool(true);
+    private static final InflaterPool sZlibInflaters = new InflaterPool(false);
+
+    private final boolean mGzip;
+    // Checks the inflated bytes against the gzip trailer, null for a deflate body
+    private final CRC32 mCrc;
+    // Bytes of the trailer still in the buffer, after the end of the compressed data
+    private int mTrailerBytesInBuffer;
+    private boolean mEnded;
+    private boolean mReleased;
+
+    private PooledInflaterInputStream(InputStream in, boolean gzip) {
+        // The buffer the superclass allocates is swapped for a pooled one straight away
+        super(in, (gzip ? sGzipInflaters : sZlibInflaters).acquire(), 1);
+        buf = BufferPool.getInstance().acquire();
+        mGzip = gzip;
+        mCrc = gzip ? new CRC32() : null;
+    }
+
+    /**
+     * Reads the gzip header of the body right away, as GZIPInputStream does.
+     */
+    static InputStream gzip(InputStream in) throws IOException {
+        PooledInflaterInputStream stream = new PooledInflaterInputStream(in, true);
+        try {
+            stream.readHeader();
+        } catch (IOException e) {
+            stream.release();
+            throw e;
+        }
+        return stream;
+    }
+
+    /**
+     * @return A stream inflating a deflate body, which HTTP sends with a zlib wrapper.
+     */
+    static InputStream deflate(InputStream in) {
+        return new PooledInflaterInputStream(in, false);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (mEnded) return -1;
+        int read = super.read(b, off, len);
+        if (read == -1) {
+            if (mGzip) readTrailer();
+            mEnded = true;
+        } else if (mCrc != null) {
+            mCrc.update(b, off, read);
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mReleased) return;
+        try {
+            super.close();
+        } finally {
+            release();
+        }
+    }
+
+    private void release() {
+        if (mReleased) return;
+        mReleased = true;
+        BufferPool.getInstance().release(buf);
+        buf = null;
+        (mGzip ? sGzipInflaters : sZlibInflaters).release(inf);
+    }
+
+    private void readHeader() throws IOException {
+        if (readUnsignedShort() != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (readUnsignedByte() != GZIP_DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = readUnsignedByte();
+        skipBytes(GZIP_HEADER_SKIPPED_BYTES);
+        if ((flags & FEXTRA) != 0) {
+            skipBytes(readUnsignedShort());
+        }
+        if ((flags & FNAME) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & FCOMMENT) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & FHCRC) != 0) {
+            skipBytes(2);
+        }
+    }
+
+    private void readTrailer() throws IOException {
+        mTrailerBytesInBuffer = inf.getRemaining();
+        long crc = readUnsignedInt();
+        long size = readUnsignedInt();
+        if (crc != mCrc.getValue() || size != (inf.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+    }
+
+    private long readUnsignedInt() throws IOException {
+        return readUnsignedShort() | ((long) readUnsignedShort() << 16);
+    }
+
+    private int readUnsignedShort() throws IOException {
+        return readUnsignedByte() | (readUnsignedByte() << 8);
+    }
+
+    /**
+     * Reads a byte of the header or the trailer, taking the trailer from the buffer first.
+     */
+    private int readUnsignedByte() throws IOException {
+        if (mTrailerBytesInBuffer > 0) {
+            return buf[len - mTrailerBytesInBuffer--] & 0xff;
+        }
+        int read = in.read();
+        if (read == -1) throw new EOFException("Unexpected end of GZIP stream");
+        return read;
+    }
+
+    private void skipBytes(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readUnsignedByte();
+        }
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        while (readUnsignedByte() != 0) {
+            // Skipping the file name or comment
+        }
+    }
+
+    /**
+     * Inflaters of one kind, reset and ready for the next body.
+     */
+    private static final class InflaterPool {
+        private final boolean mNoWrap;
+        private final Inflater[] mInflaters = new Inflater[MAX_POOLED_INFLATERS];
+        private int mCount;
+
+        InflaterPool(boolean noWrap) {
+            mNoWrap = noWrap;
+        }
+
+        synchronized Inflater acquire() {
+            if (mCount == 0) return new Inflater(mNoWrap);
+            Inflater inflater = mInflaters[--mCount];
+            mInflaters[mCount] = null;
+            return inflater;
+        }
+
+        /**
+         * Gives an inflater back, its native memory is freed if the pool is full.
+         */
+        void release(Inflater inflater) {
+            inflater.reset();
+            synchronized (this) {
+                if (mCount < mInflaters.length) {
+                    mInflaters[mCount++] = inflater;
+                    return;
+                }
+            }
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends a request to a second server when the first one is slower than it usually is, and
+ * takes whichever response arrives first. The slower request is canceled.
+ * <p>
+ * The hedge is fired once the first request has taken longer than a percentile of its recent
+ * latencies, so only the slowest few percent of requests cost a second one.
+ */
+class RequestHedger {
+
+    private static final String LOG_TAG = RequestHedger.class.getSimpleName();
+
+    private static final int LATENCY_SAMPLES = 64;
+    // Fewer samples than this say little about the tail, the default delay is used instead
+    private static final int MIN_LATENCY_SAMPLES = 8;
+    // A primary and a hedge for each thread of the network executor
+    private static final int MAX_THREADS = 6;
+    private static final long IDLE_THREAD_SECONDS = 30;
+
+    private final int mPercentile;
+    private final long mDefaultDelayMillis;
+    private final long mMinDelayMillis;
+    private final ThreadPoolExecutor mExecutor;
+
+    // Ring buffer of the latest latencies of the first request
+    private final long[] mLatencies = new long[LATENCY_SAMPLES];
+    private int mLatencyCount;
+
+    /**
+     * @param percentile         The percentile of recent latencies after which to hedge
+     * @param defaultDelayMillis The delay used until enough latencies are known
+     * @param minDelayMillis     The shortest delay, so a fast server is not hedged on jitter
+     */
+    RequestHedger(int percentile, long defaultDelayMillis, long minDelayMillis) {
+        mPercentile = percentile;
+        mDefaultDelayMillis = defaultDelayMillis;
+        mMinDelayMillis = minDelayMillis;
+        // Requests run here rather than on the network executor, whose threads are waiting.
+        // A canceled loser may hold its thread until its connection is closed, so requests queue
+        // for a thread rather than each starting a new one.
+        mExecutor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, IDLE_THREAD_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "RequestHedger");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // Syncs are hours apart, the threads are not kept in between
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    static RequestHedger createDefault() {
+        return new RequestHedger(95, TimeUnit.SECONDS.toMillis(2), 100);
+    }
+
+    /**
+     * Runs the primary request, and the hedge too if the primary is slow. If one of them fails,
+     * the other one's outcome is returned.
+     *
+     * @param hedge The request to the second server, or null to only run the primary
+     */
+    WeatherResponse execute(Request primary, @Nullable Request hedge) throws IOException {
+        WeatherHttpClient.CancellationSignal primarySignal =
+                new WeatherHttpClient.CancellationSignal();
+        WeatherHttpClient.CancellationSignal hedgeSignal =
+                new WeatherHttpClient.CancellationSignal();
+        CompletionService<WeatherResponse> completion = new ExecutorCompletionService<>(mExecutor);
+
+        long startMillis = SystemClock.elapsedRealtime();
+        completion.submit(() -> primary.execute(primarySignal));
+        Future<WeatherResponse> hedgeFuture = null;
+        try {
+            long delayMillis = getDelayMillis();
+            Future<WeatherResponse> first = completion.poll(delayMillis, TimeUnit.MILLISECONDS);
+            if (first == null && hedge != null) {
+                Log.d(LOG_TAG, "No response after " + delayMillis + " ms, hedging");
+                hedgeFuture = completion.submit(() -> hedge.execute(hedgeSignal));
+            }
+            if (first == null) {
+                first = completion.take();
+            }
+
+            try {
+                WeatherResponse response = first.get();
+                // When the hedge won, the primary took at least this long
+                recordLatency(SystemClock.elapsedRealtime() - startMillis);
+                if (first == hedgeFuture) Log.d(LOG_TAG, "Hedged request won");
+                return response;
+            } catch (ExecutionException e) {
+                if (hedgeFuture == null) throw unwrap(e);
+                Log.w(LOG_TAG, "One request failed, waiting for the other", e.getCause());
+            }
+            try {
+                return completion.take().get();
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the forecast");
+        } finally {
+            // Whichever request is still running lost
+            primarySignal.cancel();
+            hedgeSignal.cancel();
+        }
+    }
+
+    /**
+     * @return How long the primary request may take before it is hedged.
+     */
+    synchronized long getDelayMillis() {
+        int count = Math.min(mLatencyCount, LATENCY_SAMPLES);
+        if (count < MIN_LATENCY_SAMPLES) return mDefaultDelayMillis;
+        long[] sorted = Arrays.copyOf(mLatencies, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(mPercentile / 100.0 * count);
+        return Math.max(mMinDelayMillis, sorted[Math.max(0, rank - 1)]);
+    }
+
+    private synchronized void recordLatency(long latencyMillis) {
+        mLatencies[mLatencyCount++ % LATENCY_SAMPLES] = latencyMillis;
+        if (mLatencyCount == 2 * LATENCY_SAMPLES) mLatencyCount = LATENCY_SAMPLES;
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) return (IOException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        return new IOException(cause);
+    }
+
+    /**
+     * One of the hedged requests.
+     */
+    interface Request {
+        /**
+         * Called on a hedging thread.
+         *
+         * @param cancellation Canceled once the other request has won
+         */
+        WeatherResponse execute(WeatherHttpClient.CancellationSignal cancellation)
+                throws IOException;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a forecast response grows past the limits we are willing to read, so a
+ * misbehaving server cannot exhaust our memory.
+ */
+class ResponseTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    ResponseTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+import java.net.URL;
+
+/**
+ * Persists the ETag / Last-Modified validators of the last forecast response for each request
+ * url, so that the next sync can ask the server whether anything changed.
+ */
+class ResponseValidatorStore {
+
+    private static final String PREFERENCES_NAME = "response_validators";
+    private static final String ETAG_PREFIX = "etag:";
+    private static final String LAST_MODIFIED_PREFIX = "last_modified:";
+
+    private final SharedPreferences mPreferences;
+
+    ResponseValidatorStore(Context context) {
+        this(context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE));
+    }
+
+    ResponseValidatorStore(SharedPreferences preferences) {
+        mPreferences = preferences;
+    }
+
+    @Nullable
+    String getETag(URL url) {
+        return mPreferences.getString(ETAG_PREFIX + url, null);
+    }
+
+    @Nullable
+    String getLastModified(URL url) {
+        return mPreferences.getString(LAST_MODIFIED_PREFIX + url, null);
+    }
+
+    void save(URL url, @Nullable String eTag, @Nullable String lastModified) {
+        mPreferences.edit()
+                .putString(ETAG_PREFIX + url, eTag)
+                .putString(LAST_MODIFIED_PREFIX + url, lastModified)
+                .apply();
+    }
+
+    /**
+     * Forgets every stored validator, so the next request for any url downloads the full body.
+     */
+    void clear() {
+        mPreferences.edit().clear().apply();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.util.MalformedJsonException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a failed forecast fetch is worth another attempt, and how long to wait before
+ * it. Delays grow exponentially and are fully jittered, so devices which failed together do not
+ * retry together.
+ */
+class RetryPolicy {
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final Random mRandom = new Random();
+
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+    }
+
+    static RetryPolicy createDefault() {
+        return new RetryPolicy(4, TimeUnit.SECONDS.toMillis(1), TimeUnit.SECONDS.toMillis(8));
+    }
+
+    /**
+     * @param attempt The zero based attempt which just failed
+     */
+    boolean shouldRetry(IOException e, int attempt) {
+        return attempt + 1 < mMaxAttempts && isRetryable(e);
+    }
+
+    /**
+     * @param attempt The zero based attempt which just failed
+     * @return A random delay between zero and the exponential backoff for the attempt
+     */
+    long getDelayMillis(int attempt) {
+        long backoff = mBaseDelayMillis << Math.min(attempt, 30);
+        long cap = Math.min(mMaxDelayMillis, backoff);
+        return (long) (mRandom.nextDouble() * cap);
+    }
+
+    /**
+     * Transport failures and server side errors are transient. Client errors, and payloads which
+     * cannot be parsed or are too large, will fail the same way on every attempt.
+     */
+    static boolean isRetryable(IOException e) {
+        if (e instanceof HttpStatusException) {
+            int statusCode = ((HttpStatusException) e).getStatusCode();
+            return statusCode >= HttpURLConnection.HTTP_INTERNAL_ERROR
+                    || statusCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                    || statusCode == HTTP_TOO_MANY_REQUESTS;
+        }
+        return !(e instanceof MalformedJsonException || e instanceof MalformedCborException
+                || e instanceof ResponseTooLargeException);
+    }
+}
@@ -30,7 +30,8 @@ public class SunshineFirebaseJobService extends JobService {
         Log.d(LOG_TAG, "Job service started");
 
         WeatherNetworkDataSource networkDataSource = InjectorUtils.provideNetworkDataSource(this.getApplicationContext());
-        networkDataSource.fetchWeather();
+        networkDataSource.fetchWeather(FirebaseSyncScheduler.SOLAPP_DEFERRED_SYNC_TAG
+                .equals(jobParameters.getTag()));
 
         jobFinished(jobParameters, false);
 
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses how to sync from the quality of the link.
+ * <p>
+ * Every finished forecast call updates a moving average of the round trip time, and adds its
+ * body's bytes and the time they took to arrive to a pool. A compressed forecast is only around
+ * a kilobyte, too little to tell the throughput on its own, so the pool is only turned into a
+ * throughput sample once it holds enough bytes, over as many calls as that takes. Together
+ * with whether the active network is metered, the averages decide the forecast horizon of the
+ * next sync, whether to ask for compressed bodies, and how often to sync. All of it is kept in
+ * SharedPreferences, since most syncs run in a freshly started process.
+ */
+class SyncPlanner implements WeatherHttpClient.CallMetricsListener {
+
+    private static final String LOG_TAG = SyncPlanner.class.getSimpleName();
+
+    private static final String PREFERENCES_NAME = "sync_planner";
+    private static final String KEY_ROUND_TRIP_MILLIS = "round_trip_millis";
+    private static final String KEY_BYTES_PER_SECOND = "bytes_per_second";
+    private static final String KEY_POOLED_BYTES = "pooled_bytes";
+    private static final String KEY_POOLED_BODY_MILLIS = "pooled_body_millis";
+    private static final float UNKNOWN = -1;
+
+    // Weight of the newest sample in the moving averages
+    private static final float SMOOTHING = 0.3f;
+    // Fewer bytes arrive too quickly to time them
+    private static final long MIN_THROUGHPUT_SAMPLE_BYTES = 8 * 1024;
+
+    private static final long POOR_ROUND_TRIP_MILLIS = 1500;
+    private static final long GOOD_ROUND_TRIP_MILLIS = 300;
+    private static final float POOR_BYTES_PER_SECOND = 32 * 1024;
+    private static final float GOOD_BYTES_PER_SECOND = 256 * 1024;
+
+    static final int POOR_LINK_HORIZON_DAYS = 3;
+    private static final long SYNC_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(3);
+    private static final long CONSTRAINED_SYNC_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    enum LinkQuality {
+        POOR,
+        MODERATE,
+        GOOD
+    }
+
+    private final SharedPreferences mPreferences;
+    private final ConnectivityManager mConnectivityManager;
+
+    SyncPlanner(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mConnectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    @Override
+    public synchronized void onCallFinished(WeatherHttpClient.CallMetrics metrics) {
+        long roundTripMillis = metrics.timedOut ? metrics.totalMillis : metrics.headersMillis;
+        if (roundTripMillis < 0) return;
+
+        SharedPreferences.Editor editor = mPreferences.edit()
+                .putFloat(KEY_ROUND_TRIP_MILLIS, smooth(KEY_ROUND_TRIP_MILLIS, roundTripMillis));
+        if (metrics.completed && metrics.wireBytes > 0) {
+            long bytes = mPreferences.getLong(KEY_POOLED_BYTES, 0) + metrics.wireBytes;
+            long bodyMillis = mPreferences.getLong(KEY_POOLED_BODY_MILLIS, 0)
+                    + Math.max(0, metrics.totalMillis - metrics.headersMillis);
+            if (bytes >= MIN_THROUGHPUT_SAMPLE_BYTES) {
+                // Bodies which came in with their headers took less than a millisecond each
+                float bytesPerSecond = bytes * 1000f / Math.max(1, bodyMillis);
+                editor.putFloat(KEY_BYTES_PER_SECOND,
+                        smooth(KEY_BYTES_PER_SECOND, bytesPerSecond));
+                bytes = 0;
+                bodyMillis = 0;
+            }
+            editor.putLong(KEY_POOLED_BYTES, bytes)
+                    .putLong(KEY_POOLED_BODY_MILLIS, bodyMillis);
+        }
+        editor.apply();
+    }
+
+    private float smooth(String key, float sample) {
+        float average = mPreferences.getFloat(key, UNKNOWN);
+        return average == UNKNOWN ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    synchronized LinkQuality getLinkQuality() {
+        float roundTripMillis = mPreferences.getFloat(KEY_ROUND_TRIP_MILLIS, UNKNOWN);
+        float bytesPerSecond = mPreferences.getFloat(KEY_BYTES_PER_SECOND, UNKNOWN);
+        if (roundTripMillis == UNKNOWN) return LinkQuality.MODERATE;
+
+        boolean throughputKnown = bytesPerSecond != UNKNOWN;
+        if (roundTripMillis >= POOR_ROUND_TRIP_MILLIS
+                || (throughputKnown && bytesPerSecond < POOR_BYTES_PER_SECOND)) {
+            return LinkQuality.POOR;
+        }
+        if (roundTripMillis <= GOOD_ROUND_TRIP_MILLIS
+                && (!throughputKnown || bytesPerSecond >= GOOD_BYTES_PER_SECOND)) {
+            return LinkQuality.GOOD;
+        }
+        return LinkQuality.MODERATE;
+    }
+
+    boolean isMetered() {
+        return mConnectivityManager != null
+                && ConnectivityManagerCompat.isActiveNetworkMetered(mConnectivityManager);
+    }
+
+    /**
+     * @return How the next sync should run on the current link.
+     */
+    Plan plan() {
+        LinkQuality quality = getLinkQuality();
+        boolean metered = isMetered();
+        Plan plan = new Plan(
+                quality == LinkQuality.POOR
+                        ? POOR_LINK_HORIZON_DAYS : WeatherNetworkDataSource.NUM_DAYS,
+                // Only a fast link that costs nothing is better off without inflating bodies
+                quality != LinkQuality.GOOD || metered,
+                quality == LinkQuality.POOR || metered
+                        ? CONSTRAINED_SYNC_INTERVAL_MILLIS : SYNC_INTERVAL_MILLIS);
+        Log.d(LOG_TAG, quality + " link" + (metered ? ", metered" : "") + ": " + plan);
+        return plan;
+    }
+
+    static final class Plan {
+        final int horizonDays;
+        final boolean compression;
+        final long syncIntervalMillis;
+
+        Plan(int horizonDays, boolean compression, long syncIntervalMillis) {
+            this.horizonDays = horizonDays;
+            this.compression = compression;
+            this.syncIntervalMillis = syncIntervalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "syncing " + horizonDays + " days" + (compression ? " compressed" : "")
+                    + " every " + TimeUnit.MILLISECONDS.toMinutes(syncIntervalMillis) + " minutes";
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+/**
+ * Starts and schedules the background syncs of the forecast.
+ */
+public interface SyncScheduler {
+
+    /**
+     * Starts a sync right away.
+     */
+    void startImmediateSync();
+
+    /**
+     * Schedules the recurring sync at the given interval, replacing any scheduled before.
+     */
+    void scheduleRecurringSync(long intervalMillis);
+
+    /**
+     * Schedules a one-off sync of every forecast day, unless one is already pending.
+     */
+    void scheduleDeferredFullSync();
+}
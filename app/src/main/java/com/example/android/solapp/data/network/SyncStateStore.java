@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Remembers when each location last had its whole forecast synced, the wire format negotiated
+ * with the server, and the interval the recurring sync is scheduled with.
+ */
+class SyncStateStore {
+
+    private static final String PREFERENCES_NAME = "sync_state";
+    private static final String LAST_FULL_SYNC_PREFIX = "last_full_sync:";
+    private static final String KEY_SYNC_INTERVAL = "sync_interval_millis";
+    private static final String KEY_NEGOTIATED_FORMAT = "negotiated_format";
+
+    private final SharedPreferences mPreferences;
+
+    SyncStateStore(Context context) {
+        this(context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE));
+    }
+
+    SyncStateStore(SharedPreferences preferences) {
+        mPreferences = preferences;
+    }
+
+    /**
+     * @return When the location's whole forecast was last stored, 0 if never.
+     */
+    long getLastFullSyncMillis(String locationQuery) {
+        return mPreferences.getLong(LAST_FULL_SYNC_PREFIX + locationQuery, 0);
+    }
+
+    void setLastFullSyncMillis(String locationQuery, long millis) {
+        mPreferences.edit().putLong(LAST_FULL_SYNC_PREFIX + locationQuery, millis).apply();
+    }
+
+    /**
+     * @return The format the server has answered in, null if that is not known yet
+     */
+    String getNegotiatedFormat() {
+        return mPreferences.getString(KEY_NEGOTIATED_FORMAT, null);
+    }
+
+    void setNegotiatedFormat(String format) {
+        mPreferences.edit().putString(KEY_NEGOTIATED_FORMAT, format).apply();
+    }
+
+    /**
+     * @return The interval of the scheduled recurring sync, 0 if it was never scheduled.
+     */
+    long getSyncIntervalMillis() {
+        return mPreferences.getLong(KEY_SYNC_INTERVAL, 0);
+    }
+
+    void setSyncIntervalMillis(long millis) {
+        mPreferences.edit().putLong(KEY_SYNC_INTERVAL, millis).apply();
+    }
+}
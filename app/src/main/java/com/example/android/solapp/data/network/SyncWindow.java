@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.Nullable;
+
+/**
+ * A contiguous range of forecast days to store, counted from today.
+ * <p>
+ * The server always answers from today, so only the end of a window narrows the request: a
+ * window starting today asks for just its own days. The days before a later window are still
+ * downloaded, the decoder skips over them without building their entries.
+ */
+final class SyncWindow {
+
+    private final int mFirstDay;
+    private final int mDayCount;
+
+    SyncWindow(int firstDay, int dayCount) {
+        mFirstDay = firstDay;
+        mDayCount = dayCount;
+    }
+
+    /**
+     * @return The window of every day we keep a forecast for.
+     */
+    static SyncWindow full() {
+        return new SyncWindow(0, WeatherNetworkDataSource.NUM_DAYS);
+    }
+
+    /**
+     * @param storedDays Epoch days of the forecast days already stored
+     * @param today      Epoch day of today
+     * @return The smallest window covering every day that is not stored, or null if none is
+     * missing.
+     */
+    @Nullable
+    static SyncWindow forMissingDays(long[] storedDays, long today) {
+        boolean[] stored = new boolean[WeatherNetworkDataSource.NUM_DAYS];
+        for (long storedDay : storedDays) {
+            long day = storedDay - today;
+            if (day >= 0 && day < stored.length) {
+                stored[(int) day] = true;
+            }
+        }
+
+        int firstMissing = -1;
+        int lastMissing = -1;
+        for (int day = 0; day < stored.length; day++) {
+            if (!stored[day]) {
+                if (firstMissing < 0) firstMissing = day;
+                lastMissing = day;
+            }
+        }
+        if (firstMissing < 0) return null;
+        return new SyncWindow(firstMissing, lastMissing - firstMissing + 1);
+    }
+
+    /**
+     * @return The part of this window before {@code horizonDays}, or null if there is none.
+     */
+    @Nullable
+    SyncWindow limitTo(int horizonDays) {
+        if (mFirstDay >= horizonDays) return null;
+        if (mFirstDay + mDayCount <= horizonDays) return this;
+        return new SyncWindow(mFirstDay, horizonDays - mFirstDay);
+    }
+
+    int getFirstDay() {
+        return mFirstDay;
+    }
+
+    int getDayCount() {
+        return mDayCount;
+    }
+
+    boolean isFull() {
+        return mFirstDay == 0 && mDayCount >= WeatherNetworkDataSource.NUM_DAYS;
+    }
+
+    @Override
+    public String toString() {
+        return "days " + mFirstDay + " to " + (mFirstDay + mDayCount - 1);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Decodes a UTF-8 stream into characters through a pooled buffer. Unlike an
+ * {@link java.io.InputStreamReader} it allocates no buffer or charset decoder of its own, and it
+ * gives its buffer back to the {@link BufferPool} when it is closed. Each malformed byte decodes
+ * to U+FFFD.
+ */
+final class Utf8Reader extends Reader {
+
+    private static final char REPLACEMENT_CHARACTER = '\ufffd';
+
+    private final InputStream mIn;
+    private byte[] mBuffer;
+    private int mPosition;
+    private int mLimit;
+    // The second half of a surrogate pair which did not fit in the last read
+    private char mPendingLowSurrogate;
+
+    Utf8Reader(InputStream in) {
+        mIn = in;
+        mBuffer = BufferPool.getInstance().acquire();
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+        if (mBuffer == null) throw new IOException("Reader closed");
+        if (length == 0) return 0;
+
+        int count = 0;
+        if (mPendingLowSurrogate != 0) {
+            chars[offset + count++] = mPendingLowSurrogate;
+            mPendingLowSurrogate = 0;
+        }
+        while (count < length) {
+            if (mPosition == mLimit) {
+                // Only block for more input when nothing has been decoded yet
+                if (count > 0 || !fill(1)) break;
+            }
+            int lead = mBuffer[mPosition] & 0xff;
+            if (lead < 0x80) {
+                chars[offset + count++] = (char) lead;
+                mPosition++;
+                continue;
+            }
+
+            int trailing = lead >= 0xf0 ? 3 : lead >= 0xe0 ? 2 : lead >= 0xc0 ? 1 : 0;
+            if (trailing > 0 && mLimit - mPosition <= trailing) {
+                if (count > 0) break;
+                fill(trailing + 1);
+            }
+            int codePoint = decode(lead, trailing);
+            if (codePoint < 0) {
+                // Only the lead is dropped, what follows it is decoded on its own
+                chars[offset + count++] = REPLACEMENT_CHARACTER;
+                mPosition++;
+            } else if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[offset + count++] = (char) codePoint;
+                mPosition += trailing + 1;
+            } else {
+                chars[offset + count++] = Character.highSurrogate(codePoint);
+                char low = Character.lowSurrogate(codePoint);
+                if (count < length) {
+                    chars[offset + count++] = low;
+                } else {
+                    mPendingLowSurrogate = low;
+                }
+                mPosition += trailing + 1;
+            }
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    /**
+     * @return The code point at the current position, or -1 if the sequence is malformed.
+     */
+    private int decode(int lead, int trailing) {
+        if (trailing == 0 || lead >= 0xf8 || mLimit - mPosition <= trailing) return -1;
+        int codePoint = lead & (0x3f >> trailing);
+        for (int i = 1; i <= trailing; i++) {
+            int next = mBuffer[mPosition + i] & 0xff;
+            if ((next & 0xc0) != 0x80) return -1;
+            codePoint = (codePoint << 6) | (next & 0x3f);
+        }
+        int min = trailing == 1 ? 0x80 : trailing == 2 ? 0x800 : 0x10000;
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE
+                && codePoint <= Character.MAX_SURROGATE)) {
+            return -1;
+        }
+        return codePoint;
+    }
+
+    /**
+     * Moves what is left of the buffer to its start and reads until it holds at least
+     * {@code minimum} bytes.
+     *
+     * @return False if the stream ended first
+     */
+    private boolean fill(int minimum) throws IOException {
+        int remaining = mLimit - mPosition;
+        System.arraycopy(mBuffer, mPosition, mBuffer, 0, remaining);
+        mPosition = 0;
+        mLimit = remaining;
+        while (mLimit < minimum) {
+            int read = mIn.read(mBuffer, mLimit, mBuffer.length - mLimit);
+            if (read == -1) return false;
+            mLimit += read;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mBuffer == null) return;
+        byte[] buffer = mBuffer;
+        mBuffer = null;
+        BufferPool.getInstance().release(buffer);
+        mIn.close();
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared HTTP client for the forecast requests.
+ * <p>
+ * Connections are handed back to the platform's keep-alive pool instead of being disconnected,
+ * so repeated syncs skip the TCP and TLS handshakes. Every call has connect and read timeouts
+ * plus a total call timeout, can be canceled from another thread through a
+ * {@link CancellationSignal}, and reports its {@link CallMetrics} when it is closed.
+ */
+class WeatherHttpClient {
+
+    private static final String LOG_TAG = WeatherHttpClient.class.getSimpleName();
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(15);
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(20);
+    static final int DEFAULT_CALL_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(60);
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+    private static final String ACCEPTED_ENCODINGS = ENCODING_GZIP + ", " + ENCODING_DEFLATE;
+    private static final String ENCODING_IDENTITY = "identity";
+    // Unread bytes we are willing to discard to keep a connection reusable
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    // For Singleton instantiation, volatile so no thread sees a client still being built
+    private static final Object LOCK = new Object();
+    private static volatile WeatherHttpClient sInstance;
+
+    private volatile int mConnectTimeoutMillis;
+    private volatile int mReadTimeoutMillis;
+    private volatile int mCallTimeoutMillis;
+    private final ScheduledExecutorService mCallTimeoutExecutor;
+    private volatile CallMetricsListener mCallMetricsListener;
+    private volatile boolean mCompressionEnabled = true;
+
+    WeatherHttpClient(int connectTimeoutMillis, int readTimeoutMillis, int callTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+        mCallTimeoutMillis = callTimeoutMillis;
+        mCallTimeoutExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "WeatherHttpClient call timeout");
+            // The watchdog alone must not keep the process alive
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static WeatherHttpClient getInstance() {
+        WeatherHttpClient instance = sInstance;
+        if (instance == null) {
+            synchronized (LOCK) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = new WeatherHttpClient(DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                            DEFAULT_READ_TIMEOUT_MILLIS, DEFAULT_CALL_TIMEOUT_MILLIS);
+                    sInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the timeouts of the calls made from now on.
+     *
+     * @param connectTimeoutMillis The longest wait for the connection to be established
+     * @param readTimeoutMillis    The longest wait for any read of the response
+     * @param callTimeoutMillis    The longest a whole call may take, from the request to the end
+     *                             of the body
+     */
+    void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis, int callTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+        mCallTimeoutMillis = callTimeoutMillis;
+    }
+
+    void setCallMetricsListener(CallMetricsListener listener) {
+        mCallMetricsListener = listener;
+    }
+
+    CallMetricsListener getCallMetricsListener() {
+        return mCallMetricsListener;
+    }
+
+    /**
+     * On a fast unmetered link inflating the body costs more time than the bytes it saves.
+     */
+    void setCompressionEnabled(boolean enabled) {
+        mCompressionEnabled = enabled;
+    }
+
+    Call newCall(URL url) throws IOException {
+        return newCall(url, null);
+    }
+
+    /**
+     * @param cancellation Cancels the call when canceled, even if that happened already
+     */
+    Call newCall(URL url, @Nullable CancellationSignal cancellation) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(mConnectTimeoutMillis);
+        connection.setReadTimeout(mReadTimeoutMillis);
+        // Asking explicitly turns off the platform's transparent gzip, so we can count bytes
+        connection.setRequestProperty(HEADER_ACCEPT_ENCODING,
+                mCompressionEnabled ? ACCEPTED_ENCODINGS : ENCODING_IDENTITY);
+        Call call = new Call(url, connection);
+        if (cancellation != null) {
+            cancellation.setCall(call);
+        }
+        return call;
+    }
+
+    /**
+     * A single request. It must always be finished with {@link #close(boolean)}.
+     */
+    class Call {
+        private final URL mUrl;
+        private final HttpURLConnection mConnection;
+        private final long mStartMillis;
+        private final ScheduledFuture<?> mTimeout;
+        private volatile boolean mTimedOut;
+        private volatile boolean mCanceled;
+        private boolean mClosed;
+        private long mHeadersMillis = -1;
+        private CountingInputStream mWireStream;
+        private InputStream mDecoderStream;
+        private CountingInputStream mDecodedStream;
+
+        private Call(URL url, HttpURLConnection connection) {
+            mUrl = url;
+            mConnection = connection;
+            mStartMillis = SystemClock.elapsedRealtime();
+            mTimeout = mCallTimeoutExecutor.schedule(this::timeOut, mCallTimeoutMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        void setRequestProperty(String key, String value) {
+            mConnection.setRequestProperty(key, value);
+        }
+
+        String getHeaderField(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        int getResponseCode() throws IOException {
+            // A connection disconnected before it was opened would still connect
+            if (mCanceled) throw new InterruptedIOException("Call canceled");
+            int responseCode = mConnection.getResponseCode();
+            if (mHeadersMillis < 0) {
+                mHeadersMillis = SystemClock.elapsedRealtime() - mStartMillis;
+            }
+            return responseCode;
+        }
+
+        /**
+         * @return The decoded response body. Its bytes are counted both on the wire and after
+         * decoding. Closing it has no effect, the call releases the connection in
+         * {@link #close(boolean)}.
+         */
+        InputStream getBody() throws IOException {
+            if (mDecodedStream == null) {
+                getResponseCode();
+                mWireStream = new CountingInputStream(mConnection.getInputStream());
+                mDecoderStream = decode(mWireStream, mConnection.getContentEncoding());
+                mDecodedStream = new CountingInputStream(mDecoderStream) {
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+            return mDecodedStream;
+        }
+
+        /**
+         * Ends the call and records its metrics. A completed call returns its connection to the
+         * keep-alive pool, after discarding a small unread remainder of the body; anything else
+         * disconnects, since the connection may be in an unknown state.
+         */
+        void close(boolean completed) {
+            mTimeout.cancel(false);
+            synchronized (this) {
+                // From here on the connection may go back to the pool, it must not be cut
+                mClosed = true;
+                completed &= !mCanceled;
+            }
+            boolean reused = completed && !mTimedOut && release();
+            if (!reused) {
+                mConnection.disconnect();
+                closeDecoder();
+            }
+
+            CallMetrics metrics = new CallMetrics(mUrl, completed && !mTimedOut, mTimedOut,
+                    mHeadersMillis, SystemClock.elapsedRealtime() - mStartMillis,
+                    mWireStream == null ? 0 : mWireStream.getCount(),
+                    mDecodedStream == null ? 0 : mDecodedStream.getCount());
+            Log.d(LOG_TAG, metrics.toString());
+            CallMetricsListener listener = mCallMetricsListener;
+            if (listener != null) {
+                listener.onCallFinished(metrics);
+            }
+        }
+
+        /**
+         * Gives back the pooled inflater of a body that was not read to the end. The connection
+         * has been disconnected, so closing its stream cannot block.
+         */
+        private void closeDecoder() {
+            if (mDecoderStream == null || mDecoderStream == mWireStream) return;
+            try {
+                mDecoderStream.close();
+            } catch (IOException e) {
+                // The connection is gone anyway
+            }
+        }
+
+        /**
+         * Aborts any connect or read the calling thread is blocked in, unless the call has been
+         * closed in the meantime and its connection may be going back to the pool.
+         */
+        private synchronized void timeOut() {
+            if (mClosed || mCanceled) return;
+            mTimedOut = true;
+            mConnection.disconnect();
+        }
+
+        /**
+         * Aborts the call from any thread, unless it has already been closed. The thread running
+         * it fails with an IOException.
+         */
+        synchronized void cancel() {
+            if (mClosed || mCanceled) return;
+            mCanceled = true;
+            mConnection.disconnect();
+        }
+
+        private boolean release() {
+            try {
+                InputStream body = mWireStream != null ? mWireStream : mConnection.getInputStream();
+                byte[] buffer = BufferPool.getInstance().acquire();
+                try {
+                    long drained = 0;
+                    int read;
+                    while ((read = body.read(buffer)) != -1) {
+                        drained += read;
+                        if (drained > MAX_DRAIN_BYTES) return false;
+                    }
+                } finally {
+                    BufferPool.getInstance().release(buffer);
+                }
+                // A fully read body goes back to the pool when it is closed
+                (mDecoderStream != null ? mDecoderStream : body).close();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private static InputStream decode(InputStream in, String contentEncoding) throws IOException {
+        if (ENCODING_GZIP.equalsIgnoreCase(contentEncoding)) {
+            return PooledInflaterInputStream.gzip(in);
+        } else if (ENCODING_DEFLATE.equalsIgnoreCase(contentEncoding)) {
+            return PooledInflaterInputStream.deflate(in);
+        }
+        return in;
+    }
+
+    /**
+     * Cancels a call from another thread, whether or not the call has been made yet.
+     */
+    static final class CancellationSignal {
+        private Call mCall;
+        private boolean mCanceled;
+
+        synchronized void cancel() {
+            mCanceled = true;
+            if (mCall != null) {
+                mCall.cancel();
+            }
+        }
+
+        synchronized boolean isCanceled() {
+            return mCanceled;
+        }
+
+        private synchronized void setCall(Call call) {
+            mCall = call;
+            if (mCanceled) {
+                call.cancel();
+            }
+        }
+    }
+
+    /**
+     * Receives the metrics of every call, on the thread that closed it.
+     */
+    interface CallMetricsListener {
+        void onCallFinished(CallMetrics metrics);
+    }
+
+    /**
+     * Timings and byte counts of a finished {@link Call}.
+     */
+    static final class CallMetrics {
+        final URL url;
+        final boolean completed;
+        final boolean timedOut;
+        final long headersMillis;
+        final long totalMillis;
+        final long wireBytes;
+        final long decodedBytes;
+
+        CallMetrics(URL url, boolean completed, boolean timedOut, long headersMillis,
+                    long totalMillis, long wireBytes, long decodedBytes) {
+            this.url = url;
+            this.completed = completed;
+            this.timedOut = timedOut;
+            this.headersMillis = headersMillis;
+            this.totalMillis = totalMillis;
+            this.wireBytes = wireBytes;
+            this.decodedBytes = decodedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Call to " + url.getHost() + (completed ? " completed" : " failed")
+                    + (timedOut ? " (timed out)" : "")
+                    + ", headers after " + headersMillis + " ms, total " + totalMillis + " ms, "
+                    + wireBytes + " bytes read, " + decodedBytes + " after decoding";
+        }
+    }
+}
@@ -15,23 +15,26 @@
  */
 package com.example.android.sunshine.data.network;
 
-import android.arch.lifecycle.LiveData;
-import android.arch.lifecycle.MutableLiveData;
 import android.content.Context;
-import android.content.Intent;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.data.database.ListWeatherEntry;
 import com.example.android.sunshine.data.database.WeatherEntry;
-import com.firebase.jobdispatcher.Constraint;
-import com.firebase.jobdispatcher.Driver;
-import com.firebase.jobdispatcher.FirebaseJobDispatcher;
-import com.firebase.jobdispatcher.GooglePlayDriver;
-import com.firebase.jobdispatcher.Job;
-import com.firebase.jobdispatcher.Lifetime;
-import com.firebase.jobdispatcher.Trigger;
+import com.example.android.sunshine.utilities.SolAppDateUtils;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -39,92 +42,487 @@ import java.util.concurrent.TimeUnit;
  */
 public class WeatherNetworkDataSource {
     public static final int NUM_DAYS = 14;
+    public static final String DEFAULT_LOCATION = "Mountain View, CA";
     private static final String LOG_TAG = WeatherNetworkDataSource.class.getSimpleName();
 
-    private static final int SYNC_INTERVAL_HOURS = 3;
-    private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
-    private static final String SOLAPP_SYNC_TAG = "solapp-sync";
+    static final String RESPONSE_CACHE_DIRECTORY = "forecasts";
+    private static final long RESPONSE_CACHE_MAX_BYTES = 1024 * 1024;
+
+    private static final int DEFAULT_MAX_CONCURRENT_FETCHES = 3;
+
+    // Between full syncs only the missing days are stored, after that every day is stale
+    private static final long FULL_SYNC_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(6);
 
     // For Singleton instantiation
     private static final Object LOCK = new Object();
     private static WeatherNetworkDataSource sInstance;
-    private final Context mContext;
 
     private final AppExecutors mExecutors;
+    private final SyncScheduler mSyncScheduler;
+    private final WeatherHttpClient mHttpClient;
+    private final ResponseValidatorStore mValidatorStore;
+    private final ForecastResponseCache mResponseCache;
+    private final RetryPolicy mRetryPolicy;
+    private final CircuitBreaker mCircuitBreaker;
+    private final SyncStateStore mSyncStateStore;
+    private final SyncPlanner mSyncPlanner;
+    private final RequestHedger mRequestHedger;
+    // Hands retries back to the network executor once their backoff is over
+    private final ScheduledExecutorService mRetryScheduler;
+
+    private volatile OnForecastFetchedListener mOnForecastFetchedListener;
+    private volatile StoredForecastProvider mStoredForecastProvider;
+    private volatile int mMaxConcurrentFetches = DEFAULT_MAX_CONCURRENT_FETCHES;
 
-    private final MutableLiveData<WeatherEntry[]> mDownloadedWeatherForecasts;
+    // Days synced by the running fetch of each location, so concurrent requests can join it
+    private final Map<String, Integer> mInFlightFetches = new HashMap<>();
+    // Locations which need more than their running fetch does, guarded by mInFlightFetches
+    private final Map<String, Refetch> mRefetches = new HashMap<>();
 
-    private WeatherNetworkDataSource(Context context, AppExecutors executors) {
-        mContext = context;
+    /**
+     * Only the tests make their own, everything else goes through {@link #getInstance}.
+     */
+    WeatherNetworkDataSource(Context context, AppExecutors executors,
+                             SyncScheduler syncScheduler) {
         mExecutors = executors;
-        mDownloadedWeatherForecasts = new MutableLiveData<WeatherEntry[]>();
+        mSyncScheduler = syncScheduler;
+        mHttpClient = WeatherHttpClient.getInstance();
+        mValidatorStore = new ResponseValidatorStore(context);
+        mResponseCache = new ForecastResponseCache(
+                new File(context.getCacheDir(), RESPONSE_CACHE_DIRECTORY), RESPONSE_CACHE_MAX_BYTES);
+        mRetryPolicy = RetryPolicy.createDefault();
+        mCircuitBreaker = new CircuitBreaker(context);
+        mSyncStateStore = new SyncStateStore(context);
+        NetworkUtils.setFormatStore(mSyncStateStore);
+        mSyncPlanner = new SyncPlanner(context);
+        mHttpClient.setCallMetricsListener(mSyncPlanner);
+        mRequestHedger = RequestHedger.createDefault();
+        mRetryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "WeatherNetworkDataSource retry");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    public static WeatherNetworkDataSource getInstance(Context context, AppExecutors executors) {
+    public static WeatherNetworkDataSource getInstance(Context context, AppExecutors executors,
+                                                       SyncScheduler syncScheduler) {
         Log.d(LOG_TAG, "Getting the network data source");
         if (sInstance == null) {
             synchronized (LOCK) {
-                sInstance = new WeatherNetworkDataSource(context.getApplicationContext(), executors);
+                sInstance = new WeatherNetworkDataSource(context.getApplicationContext(), executors,
+                        syncScheduler);
                 Log.d(LOG_TAG, "Made new network data source");
             }
         }
         return sInstance;
     }
 
-    public LiveData<WeatherEntry[]> getCurrentWeatherForecasts() {
-        return mDownloadedWeatherForecasts;
+    /**
+     * Sets the listener which receives every fetched forecast.
+     */
+    public void setOnForecastFetchedListener(OnForecastFetchedListener listener) {
+        mOnForecastFetchedListener = listener;
+    }
+
+    /**
+     * Sets what tells which forecast days are already stored. Without it, every fetch requests
+     * all days.
+     */
+    public void setStoredForecastProvider(StoredForecastProvider provider) {
+        mStoredForecastProvider = provider;
+    }
+
+    /**
+     * Sets how many locations are fetched at the same time. The network executor bounds it too.
+     */
+    public void setMaxConcurrentFetches(int maxConcurrentFetches) {
+        mMaxConcurrentFetches = Math.max(1, maxConcurrentFetches);
+    }
+
+    /**
+     * Sets the connect, read and total timeouts of the forecast requests made from now on.
+     */
+    public void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis,
+                            int callTimeoutMillis) {
+        mHttpClient.setTimeouts(connectTimeoutMillis, readTimeoutMillis, callTimeoutMillis);
+    }
+
+    /**
+     * Sets how many threads decode a large JSON forecast, 1 to decode it on the network thread
+     * that fetched it.
+     */
+    public void setParallelDecoding(int threads) {
+        NetworkUtils.setParallelDecoding(threads);
     }
 
     public void startFetchWeatherService() {
-        Intent intentToFetch = new Intent(mContext, SolAppSyncIntentService.class);
-        mContext.startService(intentToFetch);
-        Log.d(LOG_TAG, "Service created");
+        // The database is missing forecasts, so the next fetch must not be answered with a 304
+        mValidatorStore.clear();
+        synchronized (mInFlightFetches) {
+            // A fetch already running may have sent its validators, or save them again
+            for (String locationQuery : mInFlightFetches.keySet()) {
+                requestRefetch(locationQuery, false, true);
+            }
+        }
+        mSyncScheduler.startImmediateSync();
     }
 
     public void scheduleRecurringFetchWeatherSync() {
-        Driver driver = new GooglePlayDriver(mContext);
-        FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
-
-        Job syncSunshineJob = dispatcher.newJobBuilder()
-                .setService(SunshineFirebaseJobService.class)
-                .setTag(SOLAPP_SYNC_TAG)
-                .setConstraints(Constraint.ON_ANY_NETWORK)
-                .setLifetime(Lifetime.FOREVER)
-                .setRecurring(true)
-                .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
-                .setReplaceCurrent(true)
-                .build();
+        scheduleRecurringFetchWeatherSync(mSyncPlanner.plan());
+    }
 
-        dispatcher.schedule(syncSunshineJob);
-        Log.d(LOG_TAG, "Job scheduled");
+    /**
+     * Schedules the recurring sync at the interval the plan calls for, replacing any scheduled
+     * before.
+     */
+    private void scheduleRecurringFetchWeatherSync(SyncPlanner.Plan plan) {
+        mSyncScheduler.scheduleRecurringSync(plan.syncIntervalMillis);
+        mSyncStateStore.setSyncIntervalMillis(plan.syncIntervalMillis);
     }
 
     void fetchWeather() {
-        Log.d(LOG_TAG, "Fetch weather started");
-        mExecutors.networkIO().execute(() -> {
-            try {
-                URL weatherRequestUrl = NetworkUtils.getUrl();
-                String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
-                WeatherResponse response = new OpenWeatherJsonParser().parse(jsonWeatherResponse);
-                Log.d(LOG_TAG, "JSON Parsing finished");
-
-                if (response != null && response.getWeatherForecast().length != 0) {
-                    Log.d(LOG_TAG, "JSON not null and has " + response.getWeatherForecast().length
-                            + " values");
-                    Log.d(LOG_TAG, String.format("First value is %1.0f and %1.0f",
-                            response.getWeatherForecast()[0].getMin(),
-                            response.getWeatherForecast()[0].getMax()));
-
-                    mDownloadedWeatherForecasts.postValue(response.getWeatherForecast());
+        fetchWeather(false);
+    }
+
+    /**
+     * @param fullHorizon Whether to sync every forecast day even on a poor link, as the deferred
+     *                    sync does
+     */
+    void fetchWeather(boolean fullHorizon) {
+        fetchWeather(Collections.singleton(DEFAULT_LOCATION), fullHorizon);
+    }
+
+    /**
+     * Fetches the forecasts of the given locations in parallel on the network executor, at most
+     * {@link #setMaxConcurrentFetches(int)} at a time. Each forecast is handed to the
+     * {@link OnForecastFetchedListener} as soon as its location completes, so a slow location
+     * does not hold back the others.
+     * <p>
+     * A location whose fetch is still running is not fetched twice at once: the request joins
+     * the running fetch, whose forecast reaches the listener all callers share. The location is
+     * only fetched again once the running fetch is done if the request needs more than it, that
+     * is every day while the running fetch was limited to fewer.
+     * <p>
+     * How much is fetched follows the {@link SyncPlanner}: on a poor link only the first few
+     * days are, and the rest is left to a deferred sync.
+     */
+    public void fetchWeather(Collection<String> locationQueries) {
+        fetchWeather(locationQueries, false);
+    }
+
+    private void fetchWeather(Collection<String> locationQueries, boolean fullHorizon) {
+        int horizonDays = fullHorizon ? NUM_DAYS : applyPlan().horizonDays;
+        Queue<String> pendingLocations = new ConcurrentLinkedQueue<>();
+        synchronized (mInFlightFetches) {
+            for (String locationQuery : locationQueries) {
+                Integer runningHorizonDays = mInFlightFetches.get(locationQuery);
+                if (runningHorizonDays == null) {
+                    mInFlightFetches.put(locationQuery, horizonDays);
+                    pendingLocations.add(locationQuery);
+                } else if (runningHorizonDays < horizonDays) {
+                    Log.d(LOG_TAG, "Fetch for " + locationQuery
+                            + " already in flight for fewer days, fetching again after it");
+                    requestRefetch(locationQuery, true, false);
+                } else {
+                    Log.d(LOG_TAG, "Fetch for " + locationQuery + " already in flight, joining it");
                 }
-            } catch (Exception e) {
+            }
+        }
+        if (pendingLocations.isEmpty()) return;
+
+        int workers = Math.min(mMaxConcurrentFetches, pendingLocations.size());
+        Log.d(LOG_TAG, "Fetch weather started for " + pendingLocations.size()
+                + " locations, " + workers + " at a time");
+        for (int i = 0; i < workers; i++) {
+            mExecutors.networkIO().execute(() -> {
+                String locationQuery;
+                while ((locationQuery = pendingLocations.poll()) != null) {
+                    fetchLocation(locationQuery, horizonDays, 0);
+                }
+            });
+        }
+    }
+
+    /**
+     * Sets up the client for the current link, and reschedules the recurring sync if the link
+     * calls for a different interval than it was scheduled with.
+     */
+    private SyncPlanner.Plan applyPlan() {
+        SyncPlanner.Plan plan = mSyncPlanner.plan();
+        mHttpClient.setCompressionEnabled(plan.compression);
+        long scheduledIntervalMillis = mSyncStateStore.getSyncIntervalMillis();
+        if (scheduledIntervalMillis != 0 && scheduledIntervalMillis != plan.syncIntervalMillis) {
+            scheduleRecurringFetchWeatherSync(plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Syncs a location, which stays in flight until it is done. A transient failure is retried
+     * after a backoff delay, during which the network thread is free for other locations. While
+     * the circuit breaker of the host is open, the retry waits at least until it lets a trial
+     * through.
+     *
+     * @param attempt The zero based attempt, only the first one may be answered from the cache
+     */
+    private void fetchLocation(String locationQuery, int horizonDays, int attempt) {
+        boolean retrying = false;
+        try {
+            syncLocation(locationQuery, horizonDays, attempt == 0);
+        } catch (IOException e) {
+            if (mRetryPolicy.shouldRetry(e, attempt)) {
+                long delayMillis = mRetryPolicy.getDelayMillis(attempt);
+                if (e instanceof CircuitOpenException) {
+                    delayMillis = Math.max(delayMillis,
+                            ((CircuitOpenException) e).getRetryAfterMillis());
+                }
+                Log.w(LOG_TAG, "Fetch attempt " + (attempt + 1) + " for " + locationQuery
+                        + " failed, retrying in " + delayMillis + " ms", e);
+                mRetryScheduler.schedule(() -> mExecutors.networkIO().execute(
+                        () -> fetchLocation(locationQuery, horizonDays, attempt + 1)),
+                        delayMillis, TimeUnit.MILLISECONDS);
+                retrying = true;
+            } else {
                 // Server probably invalid
                 e.printStackTrace();
             }
-        });
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            if (!retrying) {
+                finishFetch(locationQuery);
+            }
+        }
+    }
+
+    /**
+     * Makes the location be fetched again once its running fetch is done, merged with any
+     * refetch already requested. Must hold the mInFlightFetches lock.
+     */
+    private void requestRefetch(String locationQuery, boolean fullHorizon,
+                                boolean unconditional) {
+        Refetch refetch = mRefetches.get(locationQuery);
+        if (refetch == null) {
+            refetch = new Refetch();
+            mRefetches.put(locationQuery, refetch);
+        }
+        refetch.mFullHorizon |= fullHorizon;
+        refetch.mUnconditional |= unconditional;
+    }
+
+    /**
+     * Takes the location out of flight, unless it was requested again while in flight, in
+     * which case it stays in flight for the refetch.
+     */
+    private void finishFetch(String locationQuery) {
+        Refetch refetch;
+        synchronized (mInFlightFetches) {
+            refetch = mRefetches.remove(locationQuery);
+            if (refetch == null) {
+                mInFlightFetches.remove(locationQuery);
+                return;
+            }
+        }
+        Log.d(LOG_TAG, "Fetching " + locationQuery + " again, as requested while in flight");
+        if (refetch.mUnconditional) {
+            // The fetch which just finished may have saved validators since they were cleared
+            mValidatorStore.clear();
+        }
+        int horizonDays = refetch.mFullHorizon ? NUM_DAYS : applyPlan().horizonDays;
+        synchronized (mInFlightFetches) {
+            mInFlightFetches.put(locationQuery, horizonDays);
+        }
+        mExecutors.networkIO().execute(() -> fetchLocation(locationQuery, horizonDays, 0));
+    }
+
+    private void syncLocation(String locationQuery, int horizonDays, boolean allowCache)
+            throws IOException {
+        SyncWindow window = planSyncWindow(locationQuery);
+        if (window == null) {
+            Log.d(LOG_TAG, "Forecast for " + locationQuery + " is complete and recent");
+            return;
+        }
+        SyncWindow limitedWindow = window.limitTo(horizonDays);
+        if (limitedWindow != window) {
+            mSyncScheduler.scheduleDeferredFullSync();
+            if (limitedWindow == null) {
+                Log.d(LOG_TAG, "Deferring " + window + " for " + locationQuery);
+                return;
+            }
+            window = limitedWindow;
+        }
+        URL weatherRequestUrl = NetworkUtils.getUrl(locationQuery, window);
+        if (weatherRequestUrl == null) return;
+        Log.d(LOG_TAG, "Fetching days 0 to " + (window.getFirstDay() + window.getDayCount() - 1)
+                + " to store " + window + " for " + locationQuery);
+        WeatherResponse response = fetchThroughBreaker(locationQuery, weatherRequestUrl,
+                window.getFirstDay(), allowCache);
+        publish(locationQuery, window, response);
+
+        if (response != null && response.isStale()) {
+            Log.d(LOG_TAG, "Revalidating stale cached forecast");
+            response = fetchThroughBreaker(locationQuery, weatherRequestUrl,
+                    window.getFirstDay(), false);
+            publish(locationQuery, window, response);
+        }
+        if (response != null && window.isFull()) {
+            mSyncStateStore.setLastFullSyncMillis(locationQuery, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Decides which days to store: all of them when the last full sync of the location is too
+     * old, otherwise only the days missing from the stored forecast, which the listener merges
+     * into the stored rows. The days before the window are still downloaded, but not decoded,
+     * see {@link SyncWindow}.
+     *
+     * @return null if nothing needs to be requested
+     */
+    @Nullable
+    private SyncWindow planSyncWindow(String locationQuery) {
+        StoredForecastProvider provider = mStoredForecastProvider;
+        long sinceFullSyncMillis = System.currentTimeMillis()
+                - mSyncStateStore.getLastFullSyncMillis(locationQuery);
+        if (provider == null || sinceFullSyncMillis < 0
+                || sinceFullSyncMillis >= FULL_SYNC_INTERVAL_MILLIS) {
+            return SyncWindow.full();
+        }
+
+        return SyncWindow.forMissingDays(provider.getStoredForecastDays(locationQuery),
+                SolAppDateUtils.getEpochDayForToday());
+    }
+
+    /**
+     * Answers from the cache if allowed, which needs no network and so ignores the circuit
+     * breaker. Otherwise fetches the forecast as long as the breaker of its host lets requests
+     * through. Only transient failures count against the breaker: a host answering with an error
+     * that will not go away on its own, such as a 404 for an unknown location, is up. Anything
+     * thrown that is not an IOException, such as a parser failing on a malformed body, is a
+     * failure.
+     *
+     * @param firstEntry The entries before this one are skipped over without being decoded
+     * @return The response, from the cache or the network
+     * @throws CircuitOpenException If it is not cached and the breaker is open
+     */
+    private WeatherResponse fetchThroughBreaker(String locationQuery, URL url, int firstEntry,
+                                                boolean allowCache) throws IOException {
+        if (allowCache) {
+            WeatherResponse cached = NetworkUtils.getResponseFromCache(url, locationQuery,
+                    firstEntry, mResponseCache);
+            if (cached != null) return cached;
+        }
+        String host = url.getHost();
+        if (!mCircuitBreaker.allowRequest(host)) {
+            throw new CircuitOpenException(host, mCircuitBreaker.getMillisUntilTrial(host));
+        }
+        boolean recorded = false;
+        try {
+            WeatherResponse response = fetchFromNetwork(locationQuery, url, firstEntry);
+            mCircuitBreaker.recordSuccess(host);
+            recorded = true;
+            return response;
+        } catch (IOException e) {
+            if (RetryPolicy.isRetryable(e)) {
+                mCircuitBreaker.recordFailure(host);
+            } else {
+                mCircuitBreaker.recordSuccess(host);
+            }
+            recorded = true;
+            throw e;
+        } finally {
+            // A half open breaker would otherwise wait for the end of its trial forever
+            if (!recorded) {
+                mCircuitBreaker.recordFailure(host);
+            }
+        }
+    }
+
+    /**
+     * Fetches from the network, hedging slow requests to the second forecast server.
+     */
+    private WeatherResponse fetchFromNetwork(String locationQuery, URL url, int firstEntry)
+            throws IOException {
+        URL hedgeUrl = NetworkUtils.getHedgeUrl(url);
+        return mRequestHedger.execute(newRequest(locationQuery, url, firstEntry),
+                hedgeUrl == null ? null : newRequest(locationQuery, hedgeUrl, firstEntry));
+    }
+
+    private RequestHedger.Request newRequest(String locationQuery, URL url, int firstEntry) {
+        return cancellation -> NetworkUtils.getResponseFromHttpUrl(mHttpClient, url,
+                locationQuery, firstEntry, mValidatorStore, mResponseCache, false, cancellation);
+    }
+
+    /**
+     * Hands the days of the window to the listener. The decoder skipped the days before the
+     * window, the days after it are cut off here, such as those of a cached full forecast.
+     */
+    private void publish(String locationQuery, SyncWindow window, WeatherResponse response) {
+        if (response != null && response.isNotModified()) {
+            Log.d(LOG_TAG, "Stored forecast is still current");
+            return;
+        }
+        Log.d(LOG_TAG, "JSON Parsing finished");
+
+        if (response != null && !window.isFull()) {
+            long firstDay = SolAppDateUtils.getEpochDayForToday() + window.getFirstDay();
+            response = response.window(firstDay, firstDay + window.getDayCount());
+        }
+
+        if (response != null && response.getListForecast().length != 0) {
+            Log.d(LOG_TAG, "JSON not null and has " + response.getListForecast().length
+                    + " values");
+            Log.d(LOG_TAG, String.format("First value is %1.0f and %1.0f",
+                    response.getListForecast()[0].getMin(),
+                    response.getListForecast()[0].getMax()));
+
+            OnForecastFetchedListener listener = mOnForecastFetchedListener;
+            if (listener != null) {
+                // The list can show these while the full entries are built and stored
+                listener.onForecastListFetched(locationQuery, response.getListForecast());
+                listener.onForecastFetched(locationQuery, response::getWeatherForecast);
+            }
+        }
+    }
+
+    /**
+     * What the requests for a location made while it was in flight ask of its next fetch, beyond
+     * what the running fetch does.
+     */
+    private static final class Refetch {
+        boolean mFullHorizon;
+        boolean mUnconditional;
+    }
+
+    public interface StoredForecastProvider {
+        /**
+         * Called on a network thread before a location is fetched.
+         *
+         * @return The epoch days of the location's forecast days stored from today on
+         */
+        long[] getStoredForecastDays(String locationQuery);
+    }
+
+    public interface OnForecastFetchedListener {
+        /**
+         * Called on a network thread each time the forecast of a location has been fetched, as
+         * soon as the fields the list shows are decoded. The entries have no row ids.
+         */
+        void onForecastListFetched(String locationQuery, ListWeatherEntry[] forecast);
+
+        /**
+         * Called on a network thread right after {@link #onForecastListFetched}, with the full
+         * entries of the same forecast still to be built.
+         */
+        void onForecastFetched(String locationQuery, FullForecast forecast);
+    }
 
+    /**
+     * The full entries of a fetched forecast, built from its details when first asked for.
+     */
+    public interface FullForecast {
+        /**
+         * Builds the entries on the calling thread, best the one that stores them.
+         */
+        WeatherEntry[] getEntries();
     }
-}
\ No newline at end of file
+}
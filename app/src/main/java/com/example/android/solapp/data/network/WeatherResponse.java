@@ -17,18 +17,115 @@ package com.example.android.sunshine.data.network;
 
 import android.support.annotation.NonNull;
 
+import com.example.android.sunshine.data.database.ListWeatherEntry;
 import com.example.android.sunshine.data.database.WeatherEntry;
 
+import java.util.Arrays;
+
+/**
+ * A decoded forecast. The fields the list shows are ready at once, the full entries are only
+ * built from their details the first time they are asked for.
+ */
 class WeatherResponse {
 
     @NonNull
-    private final WeatherEntry[] mWeatherForecast;
+    private final String mLocation;
+    @NonNull
+    private final ListWeatherEntry[] mListForecast;
+    @NonNull
+    private final ForecastDetails mDetails;
+    // Index in the details of the first entry
+    private final int mDetailsOffset;
+    private final boolean mNotModified;
+    private final boolean mStale;
+    private WeatherEntry[] mWeatherForecast;
+
+    /**
+     * @param listForecast The list fields of every entry, without row ids
+     * @param details      The detail fields of the same entries
+     */
+    public WeatherResponse(@NonNull String location, @NonNull ListWeatherEntry[] listForecast,
+                           @NonNull ForecastDetails details) {
+        this(location, listForecast, details, 0, false, false);
+    }
+
+    private WeatherResponse(@NonNull String location, @NonNull ListWeatherEntry[] listForecast,
+                            @NonNull ForecastDetails details, int detailsOffset,
+                            boolean notModified, boolean stale) {
+        mLocation = location;
+        mListForecast = listForecast;
+        mDetails = details;
+        mDetailsOffset = detailsOffset;
+        mNotModified = notModified;
+        mStale = stale;
+    }
+
+    /**
+     * @return A response for a 304, meaning the forecast we already stored is still current.
+     */
+    static WeatherResponse notModified() {
+        return new WeatherResponse("", new ListWeatherEntry[0], ForecastDetails.EMPTY, 0, true,
+                false);
+    }
+
+    /**
+     * @return A copy of this response marking it as served from the cache past its max-age, so
+     * it has to be revalidated with the server.
+     */
+    WeatherResponse asStale() {
+        return new WeatherResponse(mLocation, mListForecast, mDetails, mDetailsOffset,
+                mNotModified, true);
+    }
+
+    /**
+     * @return This response with only the entries dated from {@code fromEpochDay} until before
+     * {@code toEpochDay}. The entries are dated on consecutive days.
+     */
+    WeatherResponse window(long fromEpochDay, long toEpochDay) {
+        int from = 0;
+        while (from < mListForecast.length && mListForecast[from].getEpochDay() < fromEpochDay) {
+            from++;
+        }
+        int to = from;
+        while (to < mListForecast.length && mListForecast[to].getEpochDay() < toEpochDay) {
+            to++;
+        }
+        if (from == 0 && to == mListForecast.length) return this;
+        return new WeatherResponse(mLocation, Arrays.copyOfRange(mListForecast, from, to),
+                mDetails, mDetailsOffset + from, mNotModified, mStale);
+    }
 
-    public WeatherResponse(@NonNull final WeatherEntry[] weatherForecast) {
-        mWeatherForecast = weatherForecast;
+    /**
+     * @return The fields of the forecast the list shows.
+     */
+    public ListWeatherEntry[] getListForecast() {
+        return mListForecast;
     }
 
-    public WeatherEntry[] getWeatherForecast() {
+    /**
+     * @return The full entries of the forecast, built on the first call.
+     */
+    public synchronized WeatherEntry[] getWeatherForecast() {
+        if (mWeatherForecast == null) {
+            WeatherEntry[] weatherForecast = new WeatherEntry[mListForecast.length];
+            for (int i = 0; i < weatherForecast.length; i++) {
+                ListWeatherEntry entry = mListForecast[i];
+                int detail = mDetailsOffset + i;
+                weatherForecast[i] = new WeatherEntry(mLocation, entry.getWeatherIconId(),
+                        entry.getEpochDay(), entry.getMin(), entry.getMax(),
+                        (int) mDetails.getHumidity(detail), mDetails.getPressure(detail),
+                        mDetails.getWindSpeed(detail), mDetails.getWindDirection(detail));
+            }
+            mWeatherForecast = weatherForecast;
+        }
         return mWeatherForecast;
     }
-}
\ No newline at end of file
+
+    public boolean isNotModified() {
+        return mNotModified;
+    }
+
+    public boolean isStale() {
+        return mStale;
+    }
+}
@@ -23,12 +23,10 @@ import android.os.Bundle;
 import com.example.android.sunshine.R;
 import com.example.android.sunshine.data.database.WeatherEntry;
 import com.example.android.sunshine.databinding.ActivityDetailBinding;
+import com.example.android.sunshine.utilities.FriendlyDateLabels;
 import com.example.android.sunshine.utilities.InjectorUtils;
-import com.example.android.sunshine.utilities.SolAppDateUtils;
 import com.example.android.sunshine.utilities.SolAppWeatherUtils;
 
-import java.util.Date;
-
 public class DetailActivity extends LifecycleActivity {
 
     public static final String WEATHER_ID_EXTRA = "WEATHER_ID_EXTRA";
@@ -41,10 +39,9 @@ public class DetailActivity extends LifecycleActivity {
         super.onCreate(savedInstanceState);
 
         mDetailBinding = DataBindingUtil.setContentView(this, R.layout.activity_detail);
-        long timestamp = getIntent().getLongExtra(WEATHER_ID_EXTRA, -1);
-        Date date = new Date(timestamp);
+        long epochDay = getIntent().getLongExtra(WEATHER_ID_EXTRA, -1);
 
-        DetailViewModelFactory factory = InjectorUtils.provideDetailViewModelFactory(this.getApplicationContext(), date);
+        DetailViewModelFactory factory = InjectorUtils.provideDetailViewModelFactory(this.getApplicationContext(), epochDay);
         mViewModel = ViewModelProviders.of(this, factory).get(DetailActivityViewModel.class);
 
 
@@ -68,8 +65,8 @@ public class DetailActivity extends LifecycleActivity {
          * Weather Date *
          ****************/
 
-        long localDateMidnightGmt = weatherEntry.getDate().getTime();
-        String dateText = SolAppDateUtils.getFriendlyDateString(DetailActivity.this, localDateMidnightGmt, true);
+        String dateText = FriendlyDateLabels.getInstance(DetailActivity.this)
+                .getLabel(weatherEntry.getEpochDay(), true);
         mDetailBinding.primaryInfo.date.setText(dateText);
 
         /***********************
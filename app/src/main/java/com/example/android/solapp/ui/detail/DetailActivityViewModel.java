@@ -22,18 +22,16 @@ import android.arch.lifecycle.ViewModel;
 import com.example.android.sunshine.data.SolAppRepository;
 import com.example.android.sunshine.data.database.WeatherEntry;
 
-import java.util.Date;
-
  class DetailActivityViewModel extends ViewModel {
 
     private final LiveData<WeatherEntry> mWeather;
-    private final Date mDate;
+    private final long mEpochDay;
     private final SolAppRepository mRepository;
 
-    public DetailActivityViewModel(SolAppRepository repository, Date date) {
+    public DetailActivityViewModel(SolAppRepository repository, long epochDay) {
         mRepository = repository;
-        mDate = date;
-        mWeather = mRepository.getWeatherByDate(mDate);
+        mEpochDay = epochDay;
+        mWeather = mRepository.getWeatherByDate(mEpochDay);
     }
 
     public LiveData<WeatherEntry> getWeather() {
@@ -21,20 +21,18 @@ import android.arch.lifecycle.ViewModelProvider;
 
 import com.example.android.sunshine.data.SolAppRepository;
 
-import java.util.Date;
-
 public class DetailViewModelFactory extends ViewModelProvider.NewInstanceFactory {
 
     private final SolAppRepository mRepository;
-    private final Date mDate;
+    private final long mEpochDay;
 
-    public DetailViewModelFactory(SolAppRepository repository, Date date) {
+    public DetailViewModelFactory(SolAppRepository repository, long epochDay) {
         this.mRepository = repository;
-        this.mDate = date;
+        this.mEpochDay = epochDay;
     }
 
     @Override
     public <T extends ViewModel> T create(Class<T> modelClass) {
-        return (T) new DetailActivityViewModel(mRepository, mDate);
+        return (T) new DetailActivityViewModel(mRepository, mEpochDay);
     }
 }
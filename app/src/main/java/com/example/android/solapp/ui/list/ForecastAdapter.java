@@ -27,10 +27,9 @@ import android.widget.TextView;
 
 import com.example.android.sunshine.R;
 import com.example.android.sunshine.data.database.ListWeatherEntry;
-import com.example.android.sunshine.utilities.SolAppDateUtils;
+import com.example.android.sunshine.utilities.FriendlyDateLabels;
 import com.example.android.sunshine.utilities.SolAppWeatherUtils;
 
-import java.util.Date;
 import java.util.List;
 
 class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
@@ -39,12 +38,14 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
 
     private final Context mContext;
+    private final FriendlyDateLabels mDateLabels;
     private final ForecastAdapterOnItemClickHandler mClickHandler;
     private final boolean mUseTodayLayout;
     private List<ListWeatherEntry> mForecast;
 
     ForecastAdapter(@NonNull Context context, ForecastAdapterOnItemClickHandler clickHandler) {
         mContext = context;
+        mDateLabels = FriendlyDateLabels.getInstance(context);
         mClickHandler = clickHandler;
         mUseTodayLayout = mContext.getResources().getBoolean(R.bool.use_today_layout);
     }
@@ -72,8 +73,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         /****************
          * Weather Date *
          ****************/
-        long dateInMillis = currentWeather.getDate().getTime();
-        String dateString = SolAppDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
+        String dateString = mDateLabels.getLabel(currentWeather.getEpochDay(), false);
         forecastAdapterViewHolder.dateView.setText(dateString);
 
         /***********************
@@ -161,7 +161,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
                 public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
                     ListWeatherEntry  newWeather = newForecast.get(newItemPosition);
                     ListWeatherEntry  oldWeather = mForecast.get(oldItemPosition);
-                    return newWeather.getId() == oldWeather.getId() && newWeather.getDate().equals(oldWeather.getDate());
+                    return newWeather.getId() == oldWeather.getId() && newWeather.getEpochDay() == oldWeather.getEpochDay();
                 }
             });
             mForecast = newForecast;
@@ -186,7 +186,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
     }
 
     public interface ForecastAdapterOnItemClickHandler {
-        void onItemClick(Date date);
+        void onItemClick(long epochDay);
     }
 
     class ForecastAdapterViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
@@ -212,8 +212,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            Date date = mForecast.get(adapterPosition).getDate();
-            mClickHandler.onItemClick(date);
+            long epochDay = mForecast.get(adapterPosition).getEpochDay();
+            mClickHandler.onItemClick(epochDay);
         }
     }
 }
\ No newline at end of file
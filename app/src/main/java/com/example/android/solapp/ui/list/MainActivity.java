@@ -29,8 +29,6 @@ import com.example.android.sunshine.R;
 import com.example.android.sunshine.ui.detail.DetailActivity;
 import com.example.android.sunshine.utilities.InjectorUtils;
 
-import java.util.Date;
-
 public class MainActivity extends LifecycleActivity implements
         ForecastAdapter.ForecastAdapterOnItemClickHandler {
 
@@ -72,10 +70,9 @@ public class MainActivity extends LifecycleActivity implements
     }
 
     @Override
-    public void onItemClick(Date date) {
+    public void onItemClick(long epochDay) {
         Intent weatherDetailIntent = new Intent(MainActivity.this, DetailActivity.class);
-        long timestamp = date.getTime();
-        weatherDetailIntent.putExtra(DetailActivity.WEATHER_ID_EXTRA, timestamp);
+        weatherDetailIntent.putExtra(DetailActivity.WEATHER_ID_EXTRA, epochDay);
         startActivity(weatherDetailIntent);
     }
 
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Friendly date labels for today through today + {@link WeatherNetworkDataSource#NUM_DAYS}, in
+ * the short style of the list and the full style of the detail screen.
+ * <p>
+ * The labels are built on the disk thread, again at local midnight and whenever
+ * {@link SolAppDateUtils} reports a change of the date, the time, the locale or the time zone,
+ * so looking one up while binding a row is an array access. Dates outside the table, or asked
+ * for before it has been built for the current day, are formatted on the spot by
+ * {@link SolAppDateUtils#getFriendlyDateString(Context, long, boolean)}.
+ */
+public final class FriendlyDateLabels {
+
+    // For Singleton instantiation
+    private static final Object LOCK = new Object();
+    private static FriendlyDateLabels sInstance;
+
+    private final Context mContext;
+    private final AppExecutors mExecutors;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean mRebuildPending = new AtomicBoolean();
+    private final Runnable mRebuild = this::rebuild;
+    private final Runnable mScheduleRebuild = this::scheduleRebuild;
+    private volatile Table mTable;
+
+    /**
+     * The labels of one day, in the locale they were built in.
+     */
+    private static final class Table {
+        // Epoch day of the first label
+        final long firstDay;
+        final Locale locale;
+        final String[] shortLabels;
+        final String[] fullLabels;
+
+        Table(Context context, long firstDay) {
+            this.firstDay = firstDay;
+            locale = Locale.getDefault();
+            int count = WeatherNetworkDataSource.NUM_DAYS + 1;
+            shortLabels = new String[count];
+            fullLabels = new String[count];
+            for (int i = 0; i < count; i++) {
+                long date = SolAppDateUtils.DAY_IN_MILLIS * (firstDay + i);
+                shortLabels[i] = SolAppDateUtils.getFriendlyDateString(context, date, false);
+                fullLabels[i] = SolAppDateUtils.getFriendlyDateString(context, date, true);
+            }
+        }
+    }
+
+    private FriendlyDateLabels(Context context, AppExecutors executors) {
+        mContext = context;
+        mExecutors = executors;
+    }
+
+    public static FriendlyDateLabels getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    FriendlyDateLabels labels = new FriendlyDateLabels(
+                            context.getApplicationContext(), AppExecutors.getInstance());
+                    SolAppDateUtils.watchForChanges(context);
+                    // Told after SolAppDateUtils has dropped its own state
+                    SolAppDateUtils.addOnDateChangedListener(labels::onDateChanged);
+                    labels.scheduleRebuild();
+                    sInstance = labels;
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param epochDay     The days since the epoch of the date
+     * @param showFullDate Whether the date is for the detail screen
+     * @return The label of the date, as {@link SolAppDateUtils#getFriendlyDateString} makes it
+     */
+    public String getLabel(long epochDay, boolean showFullDate) {
+        long today = SolAppDateUtils.getEpochDayForToday();
+        Table table = mTable;
+        if (table == null || table.firstDay != today || !table.locale.equals(Locale.getDefault())) {
+            // The midnight rebuild is late, or the locale changed under us
+            scheduleRebuild();
+        } else {
+            long index = epochDay - today;
+            if (index >= 0 && index < table.shortLabels.length) {
+                return showFullDate ? table.fullLabels[(int) index]
+                        : table.shortLabels[(int) index];
+            }
+        }
+        return SolAppDateUtils.getFriendlyDateString(mContext,
+                SolAppDateUtils.DAY_IN_MILLIS * epochDay, showFullDate);
+    }
+
+    private void onDateChanged() {
+        mTable = null;
+        scheduleRebuild();
+    }
+
+    private void scheduleRebuild() {
+        if (mRebuildPending.compareAndSet(false, true)) {
+            mExecutors.diskIO().execute(mRebuild);
+        }
+    }
+
+    private void rebuild() {
+        mRebuildPending.set(false);
+        Table table = new Table(mContext, SolAppDateUtils.getEpochDayForToday());
+        mTable = table;
+
+        // Build again once the next day has started
+        long delayMillis = Math.max(0,
+                SolAppDateUtils.getEndOfTodayMillis() - System.currentTimeMillis());
+        mMainHandler.removeCallbacks(mScheduleRebuild);
+        mMainHandler.postDelayed(mScheduleRebuild, delayMillis);
+    }
+}
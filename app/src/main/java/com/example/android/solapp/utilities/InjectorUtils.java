@@ -19,33 +19,37 @@ package com.example.android.sunshine.utilities;
 import android.content.Context;
 
 import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.BuildConfig;
 import com.example.android.sunshine.data.SolAppRepository;
 import com.example.android.sunshine.data.database.SolAppDatabase;
+import com.example.android.sunshine.data.network.FirebaseSyncScheduler;
 import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
 import com.example.android.sunshine.ui.detail.DetailViewModelFactory;
 import com.example.android.sunshine.ui.list.MainViewModelFactory;
 
-import java.util.Date;
-
 public class InjectorUtils {
 
     public static SolAppRepository provideRepository(Context context) {
+        SolAppDateUtils.watchForChanges(context);
         SolAppDatabase database = SolAppDatabase.getInstance(context.getApplicationContext());
         AppExecutors executors = AppExecutors.getInstance();
-        WeatherNetworkDataSource networkDataSource =
-                WeatherNetworkDataSource.getInstance(context.getApplicationContext(), executors);
+        WeatherNetworkDataSource networkDataSource = WeatherNetworkDataSource.getInstance(
+                context.getApplicationContext(), executors,
+                new FirebaseSyncScheduler(context.getApplicationContext()));
+        networkDataSource.setParallelDecoding(BuildConfig.FORECAST_DECODING_THREADS);
         return SolAppRepository.getInstance(database.weatherDao(), networkDataSource, executors);
     }
 
     public static WeatherNetworkDataSource provideNetworkDataSource(Context context) {
         provideRepository(context.getApplicationContext());
         AppExecutors executors = AppExecutors.getInstance();
-        return WeatherNetworkDataSource.getInstance(context.getApplicationContext(), executors);
+        return WeatherNetworkDataSource.getInstance(context.getApplicationContext(), executors,
+                new FirebaseSyncScheduler(context.getApplicationContext()));
     }
 
-    public static DetailViewModelFactory provideDetailViewModelFactory(Context context, Date date) {
+    public static DetailViewModelFactory provideDetailViewModelFactory(Context context, long epochDay) {
         SolAppRepository repository = provideRepository(context.getApplicationContext());
-        return new DetailViewModelFactory(repository, date);
+        return new DetailViewModelFactory(repository, epochDay);
     }
 
     public static MainViewModelFactory provideMainActivityViewModelFactory(Context context) {
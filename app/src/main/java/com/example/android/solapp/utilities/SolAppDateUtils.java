@@ -15,14 +15,18 @@
  */
 package com.example.android.sunshine.utilities;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.text.format.DateUtils;
 
 import com.example.android.sunshine.R;
 
 import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 public final class SolAppDateUtils {
@@ -30,41 +34,171 @@ public final class SolAppDateUtils {
     /* Milliseconds in a day */
     public static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
 
-    public static long getNormalizedUtcMsForToday() {
+    private static final String DAY_NAME_PATTERN = "EEEE";
 
-        /*
-         * This number represents the number of milliseconds that have elapsed since January
-         * 1st, 1970 at midnight in the GMT time zone.
-         */
+    // Replaced once a day, and whenever the locale or the time zone changes
+    private static volatile Today sToday;
+    private static volatile boolean sWatchingForChanges;
+    private static final CopyOnWriteArrayList<OnDateChangedListener> sListeners =
+            new CopyOnWriteArrayList<>();
+
+    /**
+     * Told on the main thread when the date, the time, the time zone or the locale has changed,
+     * once the formatting state has been invalidated.
+     */
+    public interface OnDateChangedListener {
+        void onDateChanged();
+    }
+
+    /**
+     * Everything the dates are formatted against, for one day in one locale and time zone.
+     */
+    private static final class Today {
+        final Locale locale;
+        final TimeZone timeZone;
+        final long normalizedUtcMs;
+        final long epochDay;
+        // Today counted in UTC days, which is what the friendly dates compare against
+        final long utcDaysSinceEpoch;
+        final long validFromMillis;
+        final long validUntilMillis;
+        // Not thread safe, only used while holding its lock
+        private final SimpleDateFormat dayNameFormat;
+
+        Today(long utcNowMillis) {
+            locale = Locale.getDefault();
+            timeZone = TimeZone.getDefault();
+
+            /*
+             * This number represents the number of milliseconds that have elapsed since January
+             * 1st, 1970 at midnight in the GMT time zone.
+             */
+            long gmtOffsetMillis = timeZone.getOffset(utcNowMillis);
+            long daysSinceEpochLocal =
+                    TimeUnit.MILLISECONDS.toDays(utcNowMillis + gmtOffsetMillis);
+            normalizedUtcMs = TimeUnit.DAYS.toMillis(daysSinceEpochLocal);
+            epochDay = daysSinceEpochLocal;
+            utcDaysSinceEpoch = TimeUnit.MILLISECONDS.toDays(utcNowMillis);
+
+            // The offset may be another one tomorrow, when daylight saving time changes tonight
+            long tomorrow = normalizedUtcMs + DAY_IN_MILLIS;
+            long nextLocalMidnight = tomorrow - timeZone.getOffset(tomorrow - gmtOffsetMillis);
+            long nextUtcMidnight = TimeUnit.DAYS.toMillis(utcDaysSinceEpoch + 1);
+            validFromMillis = Math.max(normalizedUtcMs - gmtOffsetMillis,
+                    TimeUnit.DAYS.toMillis(utcDaysSinceEpoch));
+            validUntilMillis = Math.min(nextLocalMidnight, nextUtcMidnight);
+
+            dayNameFormat = new SimpleDateFormat(DAY_NAME_PATTERN, locale);
+            dayNameFormat.setTimeZone(timeZone);
+        }
+
+        boolean isValid(long utcNowMillis) {
+            return utcNowMillis >= validFromMillis && utcNowMillis < validUntilMillis
+                    && locale.equals(Locale.getDefault());
+        }
+
+        String formatDayName(long dateInMillis) {
+            synchronized (dayNameFormat) {
+                return dayNameFormat.format(dateInMillis);
+            }
+        }
+    }
+
+    /**
+     * @return Today, computed again only once the day is over, or when the locale or the time
+     * zone has changed.
+     */
+    private static Today today() {
         long utcNowMillis = System.currentTimeMillis();
-        TimeZone currentTimeZone = TimeZone.getDefault();
-        long gmtOffsetMillis = currentTimeZone.getOffset(utcNowMillis);
-        long timeSinceEpochLocalTimeMillis = utcNowMillis + gmtOffsetMillis;
-        long daysSinceEpochLocal = TimeUnit.MILLISECONDS.toDays(timeSinceEpochLocalTimeMillis);
+        Today today = sToday;
+        if (today == null || !today.isValid(utcNowMillis)) {
+            today = new Today(utcNowMillis);
+            sToday = today;
+        }
+        return today;
+    }
+
+    /**
+     * Drops everything computed for the current locale, time zone and day.
+     */
+    public static void invalidate() {
+        sToday = null;
+    }
 
-        return TimeUnit.DAYS.toMillis(daysSinceEpochLocal);
+    /**
+     * Starts listening for date, time, time zone and locale changes, which invalidate the
+     * formatting state, the weather strings too on a locale change, and are then passed on to the
+     * {@link OnDateChangedListener}s. Only the
+     * first call registers anything. It is made when the app's dependencies are first provided,
+     * not while formatting.
+     */
+    public static void watchForChanges(Context context) {
+        if (sWatchingForChanges) return;
+        synchronized (SolAppDateUtils.class) {
+            if (sWatchingForChanges) return;
+            IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_DATE_CHANGED);
+            context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    // The only receiver, so every listener sees the state invalidated already
+                    invalidate();
+                    if (Intent.ACTION_LOCALE_CHANGED.equals(intent.getAction())) {
+                        SolAppWeatherUtils.invalidate();
+                    }
+                    for (OnDateChangedListener listener : sListeners) {
+                        listener.onDateChanged();
+                    }
+                }
+            }, filter);
+            sWatchingForChanges = true;
+        }
     }
 
+    public static void addOnDateChangedListener(OnDateChangedListener listener) {
+        sListeners.addIfAbsent(listener);
+    }
 
-    public static Date getNormalizedUtcDateForToday() {
-        long normalizedMilli = getNormalizedUtcMsForToday();
-        return new Date(normalizedMilli);
+    public static void removeOnDateChangedListener(OnDateChangedListener listener) {
+        sListeners.remove(listener);
+    }
+
+    public static long getNormalizedUtcMsForToday() {
+        return today().normalizedUtcMs;
+    }
+
+    /**
+     * @return The days since the epoch of today's normalized UTC date
+     */
+    public static long getEpochDayForToday() {
+        return today().epochDay;
+    }
+
+    /**
+     * @return The time at which the friendly dates start counting from the next day, the local
+     * or UTC midnight, whichever comes first
+     */
+    public static long getEndOfTodayMillis() {
+        return today().validUntilMillis;
     }
 
     private static long elapsedDaysSinceEpoch(long utcDate) {
         return TimeUnit.MILLISECONDS.toDays(utcDate);
     }
 
-    private static long getLocalMidnightFromNormalizedUtcDate(long normalizedUtcDate) {
-        TimeZone timeZone = TimeZone.getDefault();
-        long gmtOffset = timeZone.getOffset(normalizedUtcDate);
+    private static long getLocalMidnightFromNormalizedUtcDate(Today today,
+                                                              long normalizedUtcDate) {
+        long gmtOffset = today.timeZone.getOffset(normalizedUtcDate);
         return normalizedUtcDate - gmtOffset;
     }
 
 
     public static String getFriendlyDateString(Context context, long normalizedUtcMidnight, boolean showFullDate) {
+        Today today = today();
 
-        long localDate = getLocalMidnightFromNormalizedUtcDate(normalizedUtcMidnight);
+        long localDate = getLocalMidnightFromNormalizedUtcDate(today, normalizedUtcMidnight);
 
         long daysFromEpochToProvidedDate = elapsedDaysSinceEpoch(localDate);
 
@@ -72,14 +206,14 @@ public final class SolAppDateUtils {
          * As a basis for comparison, we use the number of days that have passed from the epoch
          * until today.
          */
-        long daysFromEpochToToday = elapsedDaysSinceEpoch(System.currentTimeMillis());
+        long daysFromEpochToToday = today.utcDaysSinceEpoch;
 
         if (daysFromEpochToProvidedDate == daysFromEpochToToday || showFullDate) {
             /*
              * If the date we're building the String for is today's date, the format
              * is "Today, June 24"
              */
-            String dayName = getDayName(context, localDate);
+            String dayName = getDayName(context, today, localDate);
             String readableDate = getReadableDateString(context, localDate);
             if (daysFromEpochToProvidedDate - daysFromEpochToToday < 2) {
                 /*
@@ -92,14 +226,14 @@ public final class SolAppDateUtils {
                  * documentation on DateFormat#getBestDateTimePattern(Locale, String)
                  * https://developer.android.com/reference/android/text/format/DateFormat.html#getBestDateTimePattern
                  */
-                String localizedDayName = new SimpleDateFormat("EEEE").format(localDate);
+                String localizedDayName = today.formatDayName(localDate);
                 return readableDate.replace(localizedDayName, dayName);
             } else {
                 return readableDate;
             }
         } else if (daysFromEpochToProvidedDate < daysFromEpochToToday + 7) {
             /* If the input date is less than a week in the future, just return the day name. */
-            return getDayName(context, localDate);
+            return getDayName(context, today, localDate);
         } else {
             int flags = DateUtils.FORMAT_SHOW_DATE
                     | DateUtils.FORMAT_NO_YEAR
@@ -131,16 +265,17 @@ public final class SolAppDateUtils {
      * E.g "today", "tomorrow", "Wednesday".
      *
      * @param context      Context to use for resource localization
+     * @param today        The day to count from
      * @param dateInMillis The date in milliseconds (UTC time)
      * @return the string day of the week
      */
-    private static String getDayName(Context context, long dateInMillis) {
+    private static String getDayName(Context context, Today today, long dateInMillis) {
         /*
          * If the date is today, return the localized version of "Today" instead of the actual
          * day name.
          */
         long daysFromEpochToProvidedDate = elapsedDaysSinceEpoch(dateInMillis);
-        long daysFromEpochToToday = elapsedDaysSinceEpoch(System.currentTimeMillis());
+        long daysFromEpochToToday = today.utcDaysSinceEpoch;
 
         int daysAfterToday = (int) (daysFromEpochToProvidedDate - daysFromEpochToToday);
 
@@ -151,8 +286,7 @@ public final class SolAppDateUtils {
                 return context.getString(R.string.tomorrow);
 
             default:
-                SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
-                return dayFormat.format(dateInMillis);
+                return today.formatDayName(dateInMillis);
         }
     }
 }
\ No newline at end of file
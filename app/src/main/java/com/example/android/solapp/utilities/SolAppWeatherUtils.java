@@ -16,10 +16,14 @@
 package com.example.android.sunshine.utilities;
 
 import android.content.Context;
-import android.util.Log;
+import android.support.v4.os.ConfigurationCompat;
 
 import com.example.android.sunshine.R;
 
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.Locale;
+
 /**
  * Contains useful utilities for displaying weather forecasts, such as conversion between Celsius
  * and Fahrenheit, from kph to mph, and from degrees to NSEW.  It also contains the mapping of
@@ -28,13 +32,332 @@ import com.example.android.sunshine.R;
  */
 public final class SolAppWeatherUtils {
 
-    private static final String LOG_TAG = SolAppWeatherUtils.class.getSimpleName();
+    /*
+     * Condition ids run from 200 to 962, every table below has a slot for each of them. A zero
+     * slot is an id OpenWeatherMap does not define.
+     */
+    private static final int MIN_CONDITION_ID = 200;
+    private static final int MAX_CONDITION_ID = 962;
+    private static final int CONDITION_COUNT = MAX_CONDITION_ID - MIN_CONDITION_ID + 1;
+
+    private static final int[] CONDITION_STRING_IDS = new int[CONDITION_COUNT];
+    private static final int[] SMALL_ART_IDS = new int[CONDITION_COUNT];
+    private static final int[] LARGE_ART_IDS = new int[CONDITION_COUNT];
+
+    // Temperatures and wind speeds, in whole units, whose formatted strings are kept
+    private static final int MIN_CACHED_TEMPERATURE = -128;
+    private static final int MAX_CACHED_TEMPERATURE = 127;
+    private static final int MAX_CACHED_WIND_SPEED = 255;
+
+    private static final String[] WIND_DIRECTIONS =
+            {"N", "NE", "E", "SE", "S", "SW", "W", "NW", "Unknown"};
+    private static final int UNKNOWN_DIRECTION = WIND_DIRECTIONS.length - 1;
+
+    // The strings formatted so far, for the locale they were formatted in. Dropped when the
+    // locale changes, so binding a row never has to look the locale up.
+    private static volatile LocaleStrings sLocaleStrings;
+
+    static {
+        fill(CONDITION_STRING_IDS, 200, 232, R.string.condition_2xx);
+        fill(CONDITION_STRING_IDS, 300, 321, R.string.condition_3xx);
+        int[] conditions = {500, 501, 502, 503, 504, 511, 520, 531, 600, 601, 602, 611, 612,
+                615, 616, 620, 621, 622, 701, 711, 721, 731, 741, 751, 761, 762, 771, 781, 800,
+                801, 802, 803, 804, 900, 901, 902, 903, 904, 905, 906, 951, 952, 953, 954, 955,
+                956, 957, 958, 959, 960, 961, 962};
+        int[] conditionStrings = {R.string.condition_500, R.string.condition_501,
+                R.string.condition_502, R.string.condition_503, R.string.condition_504,
+                R.string.condition_511, R.string.condition_520, R.string.condition_531,
+                R.string.condition_600, R.string.condition_601, R.string.condition_602,
+                R.string.condition_611, R.string.condition_612, R.string.condition_615,
+                R.string.condition_616, R.string.condition_620, R.string.condition_621,
+                R.string.condition_622, R.string.condition_701, R.string.condition_711,
+                R.string.condition_721, R.string.condition_731, R.string.condition_741,
+                R.string.condition_751, R.string.condition_761, R.string.condition_762,
+                R.string.condition_771, R.string.condition_781, R.string.condition_800,
+                R.string.condition_801, R.string.condition_802, R.string.condition_803,
+                R.string.condition_804, R.string.condition_900, R.string.condition_901,
+                R.string.condition_902, R.string.condition_903, R.string.condition_904,
+                R.string.condition_905, R.string.condition_906, R.string.condition_951,
+                R.string.condition_952, R.string.condition_953, R.string.condition_954,
+                R.string.condition_955, R.string.condition_956, R.string.condition_957,
+                R.string.condition_958, R.string.condition_959, R.string.condition_960,
+                R.string.condition_961, R.string.condition_962};
+        for (int i = 0; i < conditions.length; i++) {
+            fill(CONDITION_STRING_IDS, conditions[i], conditions[i], conditionStrings[i]);
+        }
+
+        /*
+         * Based on weather code data for Open Weather Map. The first range an id falls in wins,
+         * and an id in none of them gets the storm art.
+         */
+        fillArt(200, 232, R.drawable.ic_storm, R.drawable.art_storm);
+        fillArt(300, 321, R.drawable.ic_light_rain, R.drawable.art_light_rain);
+        fillArt(500, 504, R.drawable.ic_rain, R.drawable.art_rain);
+        fillArt(511, 511, R.drawable.ic_snow, R.drawable.art_snow);
+        fillArt(520, 531, R.drawable.ic_rain, R.drawable.art_rain);
+        fillArt(600, 622, R.drawable.ic_snow, R.drawable.art_snow);
+        fillArt(701, 761, R.drawable.ic_fog, R.drawable.art_fog);
+        fillArt(800, 800, R.drawable.ic_clear, R.drawable.art_clear);
+        fillArt(801, 801, R.drawable.ic_light_clouds, R.drawable.art_light_clouds);
+        fillArt(802, 804, R.drawable.ic_cloudy, R.drawable.art_clouds);
+        fillArt(951, 957, R.drawable.ic_clear, R.drawable.art_clear);
+        fillArt(MIN_CONDITION_ID, MAX_CONDITION_ID, R.drawable.ic_storm, R.drawable.art_storm);
+    }
+
+    /**
+     * The strings of one locale, each resolved or formatted the first time it is asked for. A
+     * race formats the same immutable string twice, which is harmless.
+     */
+    private static final class LocaleStrings {
+        final Locale locale;
+        final String temperatureFormat;
+        final String windFormat;
+        // Null if the format has more than PreparedFormat handles
+        final PreparedFormat preparedTemperatureFormat;
+        final PreparedFormat preparedWindFormat;
+        final String[] conditions = new String[CONDITION_COUNT];
+        final String[] temperatures =
+                new String[MAX_CACHED_TEMPERATURE - MIN_CACHED_TEMPERATURE + 1];
+        // "-0°", which is what the format makes of a small negative temperature
+        String negativeZeroTemperature;
+        final String[] winds = new String[(MAX_CACHED_WIND_SPEED + 1) * WIND_DIRECTIONS.length];
+
+        LocaleStrings(Context context) {
+            locale = ConfigurationCompat.getLocales(context.getResources().getConfiguration())
+                    .get(0);
+            temperatureFormat = context.getString(R.string.format_temperature);
+            // Speeds are stored in km/h, which is the only unit the app shows
+            windFormat = context.getString(R.string.format_wind_kmh);
+            preparedTemperatureFormat = PreparedFormat.parse(temperatureFormat, locale);
+            preparedWindFormat = PreparedFormat.parse(windFormat, locale);
+        }
+
+        String formatTemperature(double temperature) {
+            String string = preparedTemperatureFormat == null ? null
+                    : preparedTemperatureFormat.format(temperature, null);
+            return string != null ? string
+                    : String.format(locale, temperatureFormat, temperature);
+        }
+
+        String formatWind(double windSpeed, String direction) {
+            String string = preparedWindFormat == null ? null
+                    : preparedWindFormat.format(windSpeed, direction);
+            return string != null ? string
+                    : String.format(locale, windFormat, windSpeed, direction);
+        }
+    }
+
+    /**
+     * A format string of a number rounded to a whole and an optional string, "%1$1.0f" and
+     * "%2$s", parsed once per locale. Formatting appends the parts to one builder kept for the
+     * next call, where String.format parses the format again and allocates a Formatter, its
+     * builder and a decimal of the number each time.
+     */
+    private static final class PreparedFormat {
+        private static final int NUMBER = 0;
+        private static final int TEXT = 1;
+        // Above this a double has no fraction to round and may not fit a long
+        private static final double MAX_ROUNDED = 1e15;
+
+        // The literal before each argument, and the one after the last
+        private final String[] mLiterals;
+        private final int[] mArguments;
+        private final int[] mWidths;
+        private final char mZeroDigit;
+        private final StringBuilder mBuilder = new StringBuilder();
+
+        private PreparedFormat(String[] literals, int[] arguments, int[] widths,
+                               char zeroDigit) {
+            mLiterals = literals;
+            mArguments = arguments;
+            mWidths = widths;
+            mZeroDigit = zeroDigit;
+        }
+
+        /**
+         * @return The parsed format, or null if it has flags, other conversions, or the number
+         * and the string in other places than the first and the second argument
+         */
+        static PreparedFormat parse(String format, Locale locale) {
+            String[] literals = new String[3];
+            int[] arguments = new int[2];
+            int[] widths = new int[2];
+            int count = 0;
+            int nextArgument = 0;
+            StringBuilder literal = new StringBuilder();
+            int i = 0;
+            while (i < format.length()) {
+                char c = format.charAt(i++);
+                if (c != '%') {
+                    literal.append(c);
+                    continue;
+                }
+                if (i == format.length()) return null;
+                if (format.charAt(i) == '%') {
+                    literal.append('%');
+                    i++;
+                    continue;
+                }
+                if (count == arguments.length) return null;
+
+                // [argument$][width][.precision]conversion, a leading zero would be a flag
+                if (format.charAt(i) == '0') return null;
+                int start = i;
+                int number = 0;
+                while (i < format.length() && isDigit(format.charAt(i))) {
+                    number = number * 10 + format.charAt(i++) - '0';
+                }
+                if (i == format.length()) return null;
+                int argument;
+                int width;
+                if (format.charAt(i) == '$' && i > start) {
+                    argument = number - 1;
+                    i++;
+                    if (i < format.length() && format.charAt(i) == '0') return null;
+                    width = 0;
+                    while (i < format.length() && isDigit(format.charAt(i))) {
+                        width = width * 10 + format.charAt(i++) - '0';
+                    }
+                } else {
+                    argument = nextArgument++;
+                    width = number;
+                }
+                int precision = -1;
+                if (i < format.length() && format.charAt(i) == '.') {
+                    i++;
+                    int precisionStart = i;
+                    precision = 0;
+                    while (i < format.length() && isDigit(format.charAt(i))) {
+                        precision = precision * 10 + format.charAt(i++) - '0';
+                    }
+                    if (i == precisionStart) return null;
+                }
+                if (i == format.length()) return null;
+                char conversion = format.charAt(i++);
+                if (conversion == 'f') {
+                    if (argument != NUMBER || precision != 0) return null;
+                } else if (conversion == 's') {
+                    if (argument != TEXT || precision != -1) return null;
+                } else {
+                    return null;
+                }
+                literals[count] = literal.toString();
+                literal.setLength(0);
+                arguments[count] = argument;
+                widths[count] = width;
+                count++;
+            }
+            literals[count] = literal.toString();
+
+            return new PreparedFormat(Arrays.copyOf(literals, count + 1),
+                    Arrays.copyOf(arguments, count), Arrays.copyOf(widths, count),
+                    DecimalFormatSymbols.getInstance(locale).getZeroDigit());
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        /**
+         * @return The formatted string, or null for NaN, the infinities and numbers too large
+         * to round, which are left to String.format
+         */
+        synchronized String format(double number, String text) {
+            if (!(Math.abs(number) < MAX_ROUNDED)) return null;
+
+            StringBuilder builder = mBuilder;
+            builder.setLength(0);
+            for (int i = 0; i < mArguments.length; i++) {
+                builder.append(mLiterals[i]);
+                if (mArguments[i] == NUMBER) {
+                    appendNumber(builder, number, mWidths[i]);
+                } else {
+                    String value = String.valueOf(text);
+                    for (int pad = value.length(); pad < mWidths[i]; pad++) {
+                        builder.append(' ');
+                    }
+                    builder.append(value);
+                }
+            }
+            builder.append(mLiterals[mArguments.length]);
+            return builder.toString();
+        }
+
+        /**
+         * Appends the number the way "%.0f" does, rounded half away from zero, with the digits
+         * of the locale and a minus sign for any negative number, -0.0 included.
+         */
+        private void appendNumber(StringBuilder builder, double number, int width) {
+            boolean negative = Double.compare(number, 0.0) < 0;
+            long magnitude = Math.abs(round(number));
+            int digits = 1;
+            for (long rest = magnitude / 10; rest != 0; rest /= 10) {
+                digits++;
+            }
+            for (int pad = digits + (negative ? 1 : 0); pad < width; pad++) {
+                builder.append(' ');
+            }
+            if (negative) builder.append('-');
+            int end = builder.length() + digits;
+            builder.setLength(end);
+            for (int i = end - 1; i >= end - digits; i--) {
+                builder.setCharAt(i, (char) (mZeroDigit + magnitude % 10));
+                magnitude /= 10;
+            }
+        }
+    }
+
+    private static LocaleStrings getLocaleStrings(Context context) {
+        LocaleStrings localeStrings = sLocaleStrings;
+        if (localeStrings == null) {
+            localeStrings = new LocaleStrings(context);
+            sLocaleStrings = localeStrings;
+        }
+        return localeStrings;
+    }
+
+    /**
+     * Drops the strings of the current locale. Called by the receiver
+     * {@link SolAppDateUtils#watchForChanges(Context)} registers when the locale changes.
+     */
+    static void invalidate() {
+        sLocaleStrings = null;
+    }
+
+    /**
+     * @return The value rounded half away from zero, the way "%1.0f" rounds it
+     */
+    private static long round(double value) {
+        double magnitude = Math.abs(value);
+        long whole = (long) magnitude;
+        long rounded = magnitude - whole >= 0.5 ? whole + 1 : whole;
+        return value < 0 ? -rounded : rounded;
+    }
+
+    /**
+     * Sets the slots of the ids from {@code from} to {@code to} which are not set yet.
+     */
+    private static void fill(int[] table, int from, int to, int value) {
+        for (int weatherId = from; weatherId <= to; weatherId++) {
+            if (table[weatherId - MIN_CONDITION_ID] == 0) {
+                table[weatherId - MIN_CONDITION_ID] = value;
+            }
+        }
+    }
+
+    private static void fillArt(int from, int to, int smallArtId, int largeArtId) {
+        fill(SMALL_ART_IDS, from, to, smallArtId);
+        fill(LARGE_ART_IDS, from, to, largeArtId);
+    }
 
     /**
      * Temperature data is stored in Celsius by our app. Depending on the user's preference,
      * the app may need to display the temperature in Fahrenheit. This method will perform that
      * temperature conversion if necessary. It will also format the temperature so that no
      * decimal points show. Temperatures will be formatted to the following form: "21°"
+     * <p>
+     * The string of each whole temperature is formatted once per locale, from a format parsed
+     * once per locale.
      *
      * @param context     Android Context to access preferences and resources
      * @param temperature Temperature in degrees Celsius (°C)
@@ -42,10 +365,30 @@ public final class SolAppWeatherUtils {
      * "21°"
      */
     public static String formatTemperature(Context context, double temperature) {
-        int temperatureFormatResourceId = R.string.format_temperature;
+        LocaleStrings localeStrings = getLocaleStrings(context);
 
         /* For presentation, assume the user doesn't care about tenths of a degree. */
-        return String.format(context.getString(temperatureFormatResourceId), temperature);
+        long rounded = round(temperature);
+        if (rounded == 0 && Double.compare(temperature, 0.0) < 0) {
+            // Also -0.0, which the format writes with its sign
+            String string = localeStrings.negativeZeroTemperature;
+            if (string == null) {
+                string = localeStrings.formatTemperature(temperature);
+                localeStrings.negativeZeroTemperature = string;
+            }
+            return string;
+        }
+        if (rounded < MIN_CACHED_TEMPERATURE || rounded > MAX_CACHED_TEMPERATURE
+                || Double.isNaN(temperature)) {
+            return localeStrings.formatTemperature(temperature);
+        }
+        int index = (int) (rounded - MIN_CACHED_TEMPERATURE);
+        String string = localeStrings.temperatures[index];
+        if (string == null) {
+            string = localeStrings.formatTemperature(temperature);
+            localeStrings.temperatures[index] = string;
+        }
+        return string;
     }
 
     /**
@@ -59,207 +402,57 @@ public final class SolAppWeatherUtils {
      * @return Wind String in the following form: "2 km/h SW"
      */
     public static String getFormattedWind(Context context, double windSpeed, double degrees) {
-        int windFormat = R.string.format_wind_kmh;
-
-        String direction = "Unknown";
-        if (degrees >= 337.5 || degrees < 22.5) {
-            direction = "N";
-        } else if (degrees >= 22.5 && degrees < 67.5) {
-            direction = "NE";
-        } else if (degrees >= 67.5 && degrees < 112.5) {
-            direction = "E";
-        } else if (degrees >= 112.5 && degrees < 157.5) {
-            direction = "SE";
-        } else if (degrees >= 157.5 && degrees < 202.5) {
-            direction = "S";
-        } else if (degrees >= 202.5 && degrees < 247.5) {
-            direction = "SW";
-        } else if (degrees >= 247.5 && degrees < 292.5) {
-            direction = "W";
-        } else if (degrees >= 292.5 && degrees < 337.5) {
-            direction = "NW";
+        LocaleStrings localeStrings = getLocaleStrings(context);
+        int direction = getWindDirection(degrees);
+
+        if (!(Double.compare(windSpeed, 0.0) >= 0 && windSpeed < MAX_CACHED_WIND_SPEED + 0.5)) {
+            // Also -0.0, NaN and the infinities
+            return localeStrings.formatWind(windSpeed, WIND_DIRECTIONS[direction]);
         }
+        int index = (int) round(windSpeed) * WIND_DIRECTIONS.length + direction;
+        String string = localeStrings.winds[index];
+        if (string == null) {
+            string = localeStrings.formatWind(windSpeed, WIND_DIRECTIONS[direction]);
+            localeStrings.winds[index] = string;
+        }
+        return string;
+    }
 
-        return String.format(context.getString(windFormat), windSpeed, direction);
+    /**
+     * @return The index in {@link #WIND_DIRECTIONS} of the compass direction of the degrees,
+     * eighths of the compass centered on N, NE, E and so on. Anything outside 22.5 to 337.5 is N.
+     */
+    private static int getWindDirection(double degrees) {
+        if (degrees >= 337.5 || degrees < 22.5) return 0;
+        if (!(degrees >= 22.5)) return UNKNOWN_DIRECTION;
+        return (int) ((degrees - 22.5) / 45) + 1;
     }
 
     /**
      * Helper method to provide the string according to the weather
-     * condition id returned by the OpenWeatherMap call.
+     * condition id returned by the OpenWeatherMap call. Strings are resolved once per locale.
      *
      * @param context   Android context
      * @param weatherId from OpenWeatherMap API response
      *                  See http://openweathermap.org/weather-conditions for a list of all IDs
-     * @return String for the weather condition, null if no relation is found.
+     * @return String for the weather condition, or the unknown condition string if no relation
+     * is found.
      */
     public static String getStringForWeatherCondition(Context context, int weatherId) {
-        int stringId;
-        if (weatherId >= 200 && weatherId <= 232) {
-            stringId = R.string.condition_2xx;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            stringId = R.string.condition_3xx;
-        } else switch (weatherId) {
-            case 500:
-                stringId = R.string.condition_500;
-                break;
-            case 501:
-                stringId = R.string.condition_501;
-                break;
-            case 502:
-                stringId = R.string.condition_502;
-                break;
-            case 503:
-                stringId = R.string.condition_503;
-                break;
-            case 504:
-                stringId = R.string.condition_504;
-                break;
-            case 511:
-                stringId = R.string.condition_511;
-                break;
-            case 520:
-                stringId = R.string.condition_520;
-                break;
-            case 531:
-                stringId = R.string.condition_531;
-                break;
-            case 600:
-                stringId = R.string.condition_600;
-                break;
-            case 601:
-                stringId = R.string.condition_601;
-                break;
-            case 602:
-                stringId = R.string.condition_602;
-                break;
-            case 611:
-                stringId = R.string.condition_611;
-                break;
-            case 612:
-                stringId = R.string.condition_612;
-                break;
-            case 615:
-                stringId = R.string.condition_615;
-                break;
-            case 616:
-                stringId = R.string.condition_616;
-                break;
-            case 620:
-                stringId = R.string.condition_620;
-                break;
-            case 621:
-                stringId = R.string.condition_621;
-                break;
-            case 622:
-                stringId = R.string.condition_622;
-                break;
-            case 701:
-                stringId = R.string.condition_701;
-                break;
-            case 711:
-                stringId = R.string.condition_711;
-                break;
-            case 721:
-                stringId = R.string.condition_721;
-                break;
-            case 731:
-                stringId = R.string.condition_731;
-                break;
-            case 741:
-                stringId = R.string.condition_741;
-                break;
-            case 751:
-                stringId = R.string.condition_751;
-                break;
-            case 761:
-                stringId = R.string.condition_761;
-                break;
-            case 762:
-                stringId = R.string.condition_762;
-                break;
-            case 771:
-                stringId = R.string.condition_771;
-                break;
-            case 781:
-                stringId = R.string.condition_781;
-                break;
-            case 800:
-                stringId = R.string.condition_800;
-                break;
-            case 801:
-                stringId = R.string.condition_801;
-                break;
-            case 802:
-                stringId = R.string.condition_802;
-                break;
-            case 803:
-                stringId = R.string.condition_803;
-                break;
-            case 804:
-                stringId = R.string.condition_804;
-                break;
-            case 900:
-                stringId = R.string.condition_900;
-                break;
-            case 901:
-                stringId = R.string.condition_901;
-                break;
-            case 902:
-                stringId = R.string.condition_902;
-                break;
-            case 903:
-                stringId = R.string.condition_903;
-                break;
-            case 904:
-                stringId = R.string.condition_904;
-                break;
-            case 905:
-                stringId = R.string.condition_905;
-                break;
-            case 906:
-                stringId = R.string.condition_906;
-                break;
-            case 951:
-                stringId = R.string.condition_951;
-                break;
-            case 952:
-                stringId = R.string.condition_952;
-                break;
-            case 953:
-                stringId = R.string.condition_953;
-                break;
-            case 954:
-                stringId = R.string.condition_954;
-                break;
-            case 955:
-                stringId = R.string.condition_955;
-                break;
-            case 956:
-                stringId = R.string.condition_956;
-                break;
-            case 957:
-                stringId = R.string.condition_957;
-                break;
-            case 958:
-                stringId = R.string.condition_958;
-                break;
-            case 959:
-                stringId = R.string.condition_959;
-                break;
-            case 960:
-                stringId = R.string.condition_960;
-                break;
-            case 961:
-                stringId = R.string.condition_961;
-                break;
-            case 962:
-                stringId = R.string.condition_962;
-                break;
-            default:
-                return context.getString(R.string.condition_unknown, weatherId);
+        int index = weatherId - MIN_CONDITION_ID;
+        if (index < 0 || index >= CONDITION_COUNT) {
+            return context.getString(R.string.condition_unknown, weatherId);
         }
 
-        return context.getString(stringId);
+        LocaleStrings localeStrings = getLocaleStrings(context);
+        String string = localeStrings.conditions[index];
+        if (string == null) {
+            int stringId = CONDITION_STRING_IDS[index];
+            string = stringId != 0 ? context.getString(stringId)
+                    : context.getString(R.string.condition_unknown, weatherId);
+            localeStrings.conditions[index] = string;
+        }
+        return string;
     }
 
     /**
@@ -273,45 +466,12 @@ public final class SolAppWeatherUtils {
      *
      * @param weatherId from OpenWeatherMap API response
      *                  See http://openweathermap.org/weather-conditions for a list of all IDs
-     * @return resource id for the corresponding icon. -1 if no relation is found.
+     * @return resource id for the corresponding icon, the storm icon if no relation is found.
      */
     public static int getSmallArtResourceIdForWeatherCondition(int weatherId) {
-
-        /*
-         * Based on weather code data for Open Weather Map.
-         */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.ic_clear;
-        }
-
-        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.ic_storm;
+        int index = weatherId - MIN_CONDITION_ID;
+        if (index < 0 || index >= CONDITION_COUNT) return R.drawable.ic_storm;
+        return SMALL_ART_IDS[index];
     }
 
     /**
@@ -325,44 +485,11 @@ public final class SolAppWeatherUtils {
      *
      * @param weatherId from OpenWeatherMap API response
      *                  See http://openweathermap.org/weather-conditions for a list of all IDs
-     * @return resource ID for the corresponding icon. -1 if no relation is found.
+     * @return resource ID for the corresponding icon, the storm art if no relation is found.
      */
     public static int getLargeArtResourceIdForWeatherCondition(int weatherId) {
-
-        /*
-         * Based on weather code data for Open Weather Map.
-         */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.art_clear;
-        }
-
-        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.art_storm;
+        int index = weatherId - MIN_CONDITION_ID;
+        if (index < 0 || index >= CONDITION_COUNT) return R.drawable.art_storm;
+        return LARGE_ART_IDS[index];
     }
-}
\ No newline at end of file
+}
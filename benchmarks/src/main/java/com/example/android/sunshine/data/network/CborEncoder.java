@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Re-encodes a JSON forecast as CBOR, the way a server offering the compact format would.
+ * Integers use the shortest encoding and decimals become single precision floats whenever
+ * that is exact.
+ */
+final class CborEncoder {
+
+    private static final int TYPE_UNSIGNED_INTEGER = 0;
+    private static final int TYPE_NEGATIVE_INTEGER = 1;
+    private static final int TYPE_TEXT_STRING = 3;
+    private static final int TYPE_ARRAY = 4;
+    private static final int TYPE_MAP = 5;
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int SINGLE_PRECISION = 0xfa;
+    private static final int DOUBLE_PRECISION = 0xfb;
+
+    private CborEncoder() {
+    }
+
+    static byte[] fromJson(byte[] json) {
+        JsonElement tree = new JsonParser().parse(new String(json, StandardCharsets.UTF_8));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(tree, out);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(JsonElement element, DataOutputStream out) throws IOException {
+        if (element.isJsonNull()) {
+            out.writeByte(NULL);
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            writeHeader(TYPE_MAP, object.size(), out);
+            for (Map.Entry<String, JsonElement> member : object.entrySet()) {
+                writeText(member.getKey(), out);
+                write(member.getValue(), out);
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            writeHeader(TYPE_ARRAY, array.size(), out);
+            for (JsonElement item : array) {
+                write(item, out);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                out.writeByte(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isNumber()) {
+                writeNumber(new BigDecimal(primitive.getAsString()), out);
+            } else {
+                writeText(primitive.getAsString(), out);
+            }
+        }
+    }
+
+    private static void writeNumber(BigDecimal number, DataOutputStream out) throws IOException {
+        BigDecimal stripped = number.stripTrailingZeros();
+        if (stripped.scale() <= 0 && stripped.toBigInteger().bitLength() < 64) {
+            long value = stripped.longValueExact();
+            if (value >= 0) {
+                writeHeader(TYPE_UNSIGNED_INTEGER, value, out);
+            } else {
+                writeHeader(TYPE_NEGATIVE_INTEGER, -1 - value, out);
+            }
+            return;
+        }
+        double value = number.doubleValue();
+        if ((float) value == value) {
+            out.writeByte(SINGLE_PRECISION);
+            out.writeFloat((float) value);
+        } else {
+            out.writeByte(DOUBLE_PRECISION);
+            out.writeDouble(value);
+        }
+    }
+
+    private static void writeText(String text, DataOutputStream out) throws IOException {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        writeHeader(TYPE_TEXT_STRING, utf8.length, out);
+        out.write(utf8);
+    }
+
+    private static void writeHeader(int type, long value, DataOutputStream out)
+            throws IOException {
+        int major = type << 5;
+        if (value < 24) {
+            out.writeByte(major | (int) value);
+        } else if (value < 0x100) {
+            out.writeByte(major | 24);
+            out.writeByte((int) value);
+        } else if (value < 0x10000) {
+            out.writeByte(major | 25);
+            out.writeShort((int) value);
+        } else if (value < 0x100000000L) {
+            out.writeByte(major | 26);
+            out.writeInt((int) value);
+        } else {
+            out.writeByte(major | 27);
+            out.writeLong(value);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.data.database.WeatherEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes the same forecast from JSON and from CBOR into full entries, and from JSON only as far
+ * as the list needs it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForecastDecoderBenchmark {
+
+    private static final String LOCATION = "Mountain View, CA";
+
+    @Param({"14", "1000"})
+    public int days;
+
+    private final ForecastDecoder mJsonDecoder = new OpenWeatherJsonParser();
+    private final ForecastDecoder mCborDecoder = new OpenWeatherCborParser();
+    private byte[] mJson;
+    private byte[] mCbor;
+
+    @Setup
+    public void setUp() {
+        mJson = ReplayServer.syntheticForecast(days);
+        mCbor = CborEncoder.fromJson(mJson);
+        System.out.printf(Locale.US, "%n%d days: %d bytes of JSON, %d bytes of CBOR%n",
+                days, mJson.length, mCbor.length);
+    }
+
+    @Benchmark
+    public WeatherEntry[] json() throws IOException {
+        return mJsonDecoder.decode(new ByteArrayInputStream(mJson), LOCATION, 0,
+                Integer.MAX_VALUE).getWeatherForecast();
+    }
+
+    @Benchmark
+    public ListWeatherEntry[] jsonList() throws IOException {
+        return mJsonDecoder.decode(new ByteArrayInputStream(mJson), LOCATION, 0,
+                Integer.MAX_VALUE).getListForecast();
+    }
+
+    @Benchmark
+    public WeatherEntry[] cbor() throws IOException {
+        return mCborDecoder.decode(new ByteArrayInputStream(mCbor), LOCATION, 0,
+                Integer.MAX_VALUE).getWeatherForecast();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.arch.lifecycle.LiveData;
+
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.data.database.WeatherDao;
+import com.example.android.sunshine.data.database.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Supplier;
+
+/**
+ * Stands in for the Room DAO of the weather table: rows replace each other on (location, date)
+ * and get a new id when they do, writes are serialized like Room's transactions, and the
+ * observed queries post their rows again after every write.
+ */
+final class InMemoryWeatherDao implements WeatherDao {
+
+    private final Map<String, TreeMap<Long, WeatherEntry>> mRows = new HashMap<>();
+    private final Set<LiveQuery<?>> mLiveQueries = new CopyOnWriteArraySet<>();
+    private int mNextId = 1;
+    private volatile InsertListener mInsertListener;
+
+    void setInsertListener(InsertListener listener) {
+        mInsertListener = listener;
+    }
+
+    @Override
+    public LiveData<WeatherEntry> getWeatherByDate(String location, long epochDay) {
+        return new LiveQuery<>(() -> {
+            synchronized (this) {
+                TreeMap<Long, WeatherEntry> rows = mRows.get(location);
+                return rows == null ? null : rows.get(epochDay);
+            }
+        });
+    }
+
+    @Override
+    public void bulkInsert(WeatherEntry... weather) {
+        long start = System.nanoTime();
+        synchronized (this) {
+            for (WeatherEntry entry : weather) {
+                TreeMap<Long, WeatherEntry> rows = mRows.get(entry.getLocation());
+                if (rows == null) {
+                    rows = new TreeMap<>();
+                    mRows.put(entry.getLocation(), rows);
+                }
+                rows.put(entry.getEpochDay(), new WeatherEntry(mNextId++, entry.getLocation(),
+                        entry.getWeatherIconId(), entry.getEpochDay(), entry.getMin(),
+                        entry.getMax(), entry.getHumidity(), entry.getPressure(),
+                        entry.getWind(), entry.getDegrees()));
+            }
+        }
+        long end = System.nanoTime();
+        invalidate();
+
+        InsertListener listener = mInsertListener;
+        if (listener != null && weather.length != 0) {
+            listener.onInserted(weather[0].getLocation(), weather.length, end - start);
+        }
+    }
+
+    @Override
+    public synchronized int countAllFutureWeather(String location, long epochDay) {
+        TreeMap<Long, WeatherEntry> rows = mRows.get(location);
+        return rows == null ? 0 : rows.tailMap(epochDay).size();
+    }
+
+    @Override
+    public synchronized long[] getFutureWeatherDays(String location, long epochDay) {
+        TreeMap<Long, WeatherEntry> rows = mRows.get(location);
+        if (rows == null) return new long[0];
+        long[] days = new long[rows.tailMap(epochDay).size()];
+        int i = 0;
+        for (long day : rows.tailMap(epochDay).keySet()) {
+            days[i++] = day;
+        }
+        return days;
+    }
+
+    @Override
+    public void deleteOldWeather(long epochDay) {
+        synchronized (this) {
+            for (TreeMap<Long, WeatherEntry> rows : mRows.values()) {
+                rows.headMap(epochDay).clear();
+            }
+        }
+        invalidate();
+    }
+
+    @Override
+    public LiveData<List<ListWeatherEntry>> getCurrentWeatherForecasts(String location,
+                                                                       long epochDay) {
+        return new LiveQuery<>(() -> {
+            synchronized (this) {
+                List<ListWeatherEntry> forecast = new ArrayList<>();
+                TreeMap<Long, WeatherEntry> rows = mRows.get(location);
+                if (rows != null) {
+                    for (WeatherEntry entry : rows.tailMap(epochDay).values()) {
+                        forecast.add(new ListWeatherEntry(entry.getId(), entry.getWeatherIconId(),
+                                entry.getEpochDay(), entry.getMin(), entry.getMax()));
+                    }
+                }
+                return forecast;
+            }
+        });
+    }
+
+    /**
+     * Deletes every row.
+     */
+    void clear() {
+        synchronized (this) {
+            mRows.clear();
+        }
+        invalidate();
+    }
+
+    synchronized int size() {
+        int size = 0;
+        for (TreeMap<Long, WeatherEntry> rows : mRows.values()) {
+            size += rows.size();
+        }
+        return size;
+    }
+
+    private void invalidate() {
+        for (LiveQuery<?> query : mLiveQueries) {
+            query.refresh();
+        }
+    }
+
+    interface InsertListener {
+        /**
+         * Called on the writing thread once the rows of a location are stored.
+         */
+        void onInserted(String location, int rows, long nanos);
+    }
+
+    /**
+     * Runs its query again on every write for as long as it is observed, like Room's.
+     */
+    private final class LiveQuery<T> extends LiveData<T> {
+        private final Supplier<T> mQuery;
+
+        LiveQuery(Supplier<T> query) {
+            mQuery = query;
+        }
+
+        @Override
+        protected void onActive() {
+            mLiveQueries.add(this);
+            refresh();
+        }
+
+        @Override
+        protected void onInactive() {
+            mLiveQueries.remove(this);
+        }
+
+        void refresh() {
+            postValue(mQuery.get());
+        }
+    }
+}
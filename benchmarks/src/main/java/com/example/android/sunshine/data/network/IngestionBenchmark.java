@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingests synthetic forecasts from 14 to 100k entries: parsed from memory by
+ * {@link OpenWeatherJsonParser}, and read from a local replay server through
+ * {@link NetworkUtils}, as a sync does. Run with {@code -prof gc} for the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestionBenchmark {
+
+    private static final String LOCATION = "Mountain View, CA";
+
+    @Param({"14", "1000", "10000", "100000"})
+    public int days;
+
+    private byte[] mJson;
+    private ReplayServer mServer;
+    private WeatherHttpClient mHttpClient;
+    private ResponseValidatorStore mValidatorStore;
+    private ForecastResponseCache mResponseCache;
+    private URL mUrl;
+
+    @Setup
+    public void setUp() throws IOException {
+        mJson = ReplayServer.syntheticForecast(days);
+        mServer = ReplayServer.start(mJson, 0);
+        mHttpClient = new WeatherHttpClient(WeatherHttpClient.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                WeatherHttpClient.DEFAULT_READ_TIMEOUT_MILLIS,
+                WeatherHttpClient.DEFAULT_CALL_TIMEOUT_MILLIS);
+        // The replayed responses carry no validators or Cache-Control, so every read is a full one
+        mValidatorStore = new ResponseValidatorStore(new InMemoryPreferences());
+        File cacheDirectory = Files.createTempDirectory("forecasts").toFile();
+        mResponseCache = new ForecastResponseCache(cacheDirectory, 0);
+
+        NetworkUtils.setForecastBaseUrl(mServer.getBaseUrl());
+        NetworkUtils.setPreferredFormat(OpenWeatherJsonParser.FORMAT);
+        // The largest payloads are far past what the app accepts
+        NetworkUtils.setResponseLimits(Long.MAX_VALUE, Integer.MAX_VALUE);
+        mUrl = NetworkUtils.getUrl(LOCATION);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.stop();
+        NetworkUtils.setResponseLimits(NetworkUtils.DEFAULT_MAX_BODY_BYTES,
+                NetworkUtils.DEFAULT_MAX_ENTRIES);
+    }
+
+    @Benchmark
+    public WeatherEntry[] parse() throws IOException {
+        return OpenWeatherJsonParser.parse(new Utf8Reader(new ByteArrayInputStream(mJson)),
+                LOCATION, 0, Integer.MAX_VALUE).getWeatherForecast();
+    }
+
+    @Benchmark
+    public WeatherEntry[] readBody() throws IOException {
+        return NetworkUtils.getResponseFromHttpUrl(mHttpClient, mUrl, LOCATION, mValidatorStore,
+                mResponseCache, false).getWeatherForecast();
+    }
+}
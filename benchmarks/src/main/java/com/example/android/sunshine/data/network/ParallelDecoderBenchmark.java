@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a large JSON forecast on 1 to N threads, to see how decoding scales with the cores of
+ * the device. Compare with {@link ForecastDecoderBenchmark#json()}, which streams the body on
+ * the calling thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelDecoderBenchmark {
+
+    private static final String LOCATION = "Mountain View, CA";
+
+    @Param({"2000", "20000"})
+    public int days;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private ForecastDecoder mDecoder;
+    private byte[] mJson;
+
+    @Setup
+    public void setUp() {
+        mJson = ReplayServer.syntheticForecast(days);
+        mDecoder = new ParallelJsonDecoder(threads);
+    }
+
+    @Benchmark
+    public WeatherEntry[] decode() throws IOException {
+        return mDecoder.decode(new ByteArrayInputStream(mJson), LOCATION, 0, Integer.MAX_VALUE)
+                .getWeatherForecast();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the forecast server. Every request is answered with the same recorded
+ * body, gzipped when the client accepts it, after a fixed injected latency. A share of the
+ * responses can be made slower still, to give the latency a tail. Requests for the CBOR format,
+ * or preferring it in their Accept header, get the body re-encoded as CBOR.
+ */
+final class ReplayServer {
+
+    private static final String PATH = "/weather";
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final byte[] mBody;
+    private final byte[] mGzippedBody;
+    private final byte[] mCborBody;
+    private final byte[] mGzippedCborBody;
+    private final long mLatencyMillis;
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private volatile int mSlowPercent;
+    private volatile long mSlowExtraMillis;
+
+    static {
+        // Otherwise Nagle holds back the body until the headers are acked, adding ~40 ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private ReplayServer(byte[] body, long latencyMillis) throws IOException {
+        mBody = body;
+        mGzippedBody = gzip(body);
+        mCborBody = CborEncoder.fromJson(body);
+        mGzippedCborBody = gzip(mCborBody);
+        mLatencyMillis = latencyMillis;
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext(PATH, this::handle);
+        // The injected latency must not serialize concurrent requests
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+    }
+
+    static ReplayServer start(byte[] body, long latencyMillis) throws IOException {
+        ReplayServer server = new ReplayServer(body, latencyMillis);
+        server.mServer.start();
+        return server;
+    }
+
+    /**
+     * Delays the given percentage of responses by another {@code extraMillis}.
+     */
+    void setSlowResponses(int percent, long extraMillis) {
+        mSlowPercent = percent;
+        mSlowExtraMillis = extraMillis;
+    }
+
+    String getBaseUrl() {
+        InetSocketAddress address = mServer.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + PATH;
+    }
+
+    int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    int getBodySize() {
+        return mBody.length;
+    }
+
+    int getGzippedBodySize() {
+        return mGzippedBody.length;
+    }
+
+    int getCborBodySize() {
+        return mCborBody.length;
+    }
+
+    int getGzippedCborBodySize() {
+        return mGzippedCborBody.length;
+    }
+
+    void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        mRequestCount.incrementAndGet();
+        try {
+            boolean slow = ThreadLocalRandom.current().nextInt(100) < mSlowPercent;
+            TimeUnit.MILLISECONDS.sleep(mLatencyMillis + (slow ? mSlowExtraMillis : 0));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gzip = acceptEncoding != null
+                && acceptEncoding.toLowerCase(Locale.US).contains("gzip");
+        String query = exchange.getRequestURI().getRawQuery();
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        // Like a server that supports CBOR, it answers in CBOR when that is preferred
+        boolean cbor = query != null && query.contains("mode=" + OpenWeatherCborParser.FORMAT)
+                || accept != null && accept.startsWith("application/cbor");
+        byte[] body = cbor ? (gzip ? mGzippedCborBody : mCborBody) : (gzip ? mGzippedBody : mBody);
+        exchange.getResponseHeaders().set("Content-Type",
+                cbor ? "application/cbor" : "application/json; charset=utf-8");
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @return A forecast in the server's format with the given number of days.
+     */
+    static byte[] syntheticForecast(int days) {
+        StringBuilder json = new StringBuilder(days * 300 + 256);
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.0838,\"lat\":37.3861},\"country\":\"US\"},")
+                .append("\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(days)
+                .append(",\"list\":[");
+        long dt = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        int[] weatherIds = {800, 801, 500, 211, 600, 741};
+        for (int i = 0; i < days; i++) {
+            if (i > 0) json.append(',');
+            double min = 8 + (i % 7);
+            double max = min + 6 + (i % 5) * 0.5;
+            json.append("{\"dt\":").append(dt + i * TimeUnit.DAYS.toSeconds(1))
+                    .append(",\"temp\":{\"day\":").append(max - 1)
+                    .append(",\"min\":").append(min)
+                    .append(",\"max\":").append(max)
+                    .append(",\"night\":").append(min + 1)
+                    .append(",\"eve\":").append(max - 2)
+                    .append(",\"morn\":").append(min + 2)
+                    .append("},\"pressure\":").append(1000 + i % 30 + 0.25)
+                    .append(",\"humidity\":").append(40 + i % 50)
+                    .append(",\"weather\":[{\"id\":").append(weatherIds[i % weatherIds.length])
+                    .append(",\"main\":\"Clear\",\"description\":\"sky is clear\",\"icon\":\"01d\"}]")
+                    .append(",\"speed\":").append(1.5 + i % 10)
+                    .append(",\"deg\":").append((i * 37) % 360)
+                    .append(",\"clouds\":").append(i % 100)
+                    .append('}');
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(body);
+        }
+        return bytes.toByteArray();
+    }
+}
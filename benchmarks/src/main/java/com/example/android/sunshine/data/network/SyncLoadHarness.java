@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.arch.lifecycle.LiveData;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.data.SolAppRepository;
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test of the forecast sync, run against a local {@link ReplayServer}.
+ * <p>
+ * Every round calls the app's {@link WeatherNetworkDataSource#fetchWeather(java.util.Collection)}
+ * for all locations, on the executors of {@link AppExecutors}, and the fetched forecasts flow
+ * through {@link SolAppRepository} into its DAO and the list it shows for the default location.
+ * Room needs the Android runtime, so the DAO is an {@link InMemoryWeatherDao}, and the background
+ * jobs are never scheduled. The DAO is emptied before every round, so every round syncs every
+ * day of every location.
+ * <p>
+ * Options, all optional:
+ * <pre>
+ *   --days N          days in the synthetic forecast (14)
+ *   --payload FILE    replay a recorded JSON response instead of the synthetic forecast
+ *   --format F        wire format to ask for, json or cbor, or auto to negotiate it as the
+ *                     app does (cbor)
+ *   --locations N     locations synced per round, the default location among them (8)
+ *   --concurrency N   locations fetched at a time, at most the 3 network threads of
+ *                     AppExecutors (3)
+ *   --latency-ms N    latency injected by the server before every response (50)
+ *   --rounds N        measured rounds (20)
+ *   --warmup N        rounds run before measuring (5)
+ *   --max-body-kb N   largest decoded body the client reads (4096, as in the app)
+ *   --max-entries N   most forecast entries the client accepts (10000, as in the app)
+ *   --decode-threads N
+ *                     threads decoding large JSON forecasts, 1 to decode on the network thread
+ *                     (1, as in the app)
+ *   --slow-percent N  share of responses the server delays further (0)
+ *   --slow-ms N       further delay of those responses (1000)
+ *   --hedge-latency-ms N
+ *                     starts a second server with this latency, which the app hedges slow
+ *                     requests to as it does with its static endpoint (off)
+ * </pre>
+ * With hedging the header and body timings are those of the request that won. End to end runs
+ * from the start of the round until the location is stored, and the list is shown once the
+ * repository's list of the default location has its fetched days.
+ */
+public final class SyncLoadHarness {
+
+    // AppExecutors runs the network on this many threads
+    private static final int NETWORK_THREADS = 3;
+    private static final long ROUND_TIMEOUT_MINUTES = 2;
+    private static final String FORMAT_AUTO = "auto";
+
+    private final List<String> mLocations;
+    private final InMemoryWeatherDao mWeatherDao = new InMemoryWeatherDao();
+    private final AppExecutors mExecutors = AppExecutors.getInstance();
+    private final WeatherNetworkDataSource mNetworkDataSource;
+
+    // What the current round has seen so far
+    private final Map<String, WeatherHttpClient.CallMetrics> mCallMetrics =
+            new ConcurrentHashMap<>();
+    private final Map<String, long[]> mStores = new ConcurrentHashMap<>();
+    private volatile long mRoundStartNanos;
+    private volatile long mShownNanos;
+    private volatile CountDownLatch mRoundDone;
+
+    private SyncLoadHarness(int locationCount, int concurrency, File cacheDirectory) {
+        mLocations = new ArrayList<>(locationCount);
+        mLocations.add(WeatherNetworkDataSource.DEFAULT_LOCATION);
+        for (int i = 1; i < locationCount; i++) {
+            mLocations.add("Location " + i);
+        }
+
+        mNetworkDataSource = WeatherNetworkDataSource.getInstance(
+                new InMemoryContext(cacheDirectory), mExecutors, new NoSyncScheduler());
+        mNetworkDataSource.setMaxConcurrentFetches(concurrency);
+        // The data source feeds its sync planner from the client, which keeps doing so
+        WeatherHttpClient httpClient = WeatherHttpClient.getInstance();
+        WeatherHttpClient.CallMetricsListener planner = httpClient.getCallMetricsListener();
+        httpClient.setCallMetricsListener(metrics -> {
+            if (metrics.completed) {
+                mCallMetrics.putIfAbsent(locationOf(metrics.url), metrics);
+            }
+            if (planner != null) {
+                planner.onCallFinished(metrics);
+            }
+        });
+
+        mWeatherDao.setInsertListener((location, rows, nanos) -> {
+            mStores.put(location, new long[]{nanos, System.nanoTime(), rows});
+            mRoundDone.countDown();
+        });
+        SolAppRepository repository =
+                SolAppRepository.getInstance(mWeatherDao, mNetworkDataSource, mExecutors);
+        LiveData<List<ListWeatherEntry>> forecast = repository.getCurrentWeatherForecasts();
+        forecast.observeForever(entries -> {
+            if (entries != null && !entries.isEmpty() && mShownNanos == 0
+                    && mRoundDone != null) {
+                mShownNanos = System.nanoTime();
+                mRoundDone.countDown();
+            }
+        });
+    }
+
+    public static void main(String[] args) {
+        try {
+            run(Options.parse(args));
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        // The threads of AppExecutors live as long as the app, nothing else ends them
+        System.exit(0);
+    }
+
+    private static void run(Options options) throws Exception {
+        byte[] body = options.payload != null
+                ? Files.readAllBytes(Paths.get(options.payload))
+                : ReplayServer.syntheticForecast(options.days);
+
+        ReplayServer server = ReplayServer.start(body, options.latencyMillis);
+        server.setSlowResponses(options.slowPercent, options.slowMillis);
+        ReplayServer hedgeServer = options.hedgeLatencyMillis < 0 ? null
+                : ReplayServer.start(body, options.hedgeLatencyMillis);
+        File cacheDirectory = Files.createTempDirectory("forecasts").toFile();
+        try {
+            NetworkUtils.setForecastBaseUrl(server.getBaseUrl());
+            NetworkUtils.setHedgeBaseUrl(hedgeServer == null ? null : hedgeServer.getBaseUrl());
+            NetworkUtils.setResponseLimits(options.maxBodyBytes, options.maxEntries);
+            SyncLoadHarness harness = new SyncLoadHarness(options.locations, options.concurrency,
+                    cacheDirectory);
+            harness.mNetworkDataSource.setParallelDecoding(options.decodeThreads);
+            // The data source has restored the format it negotiated, which is none yet
+            if (!FORMAT_AUTO.equals(options.format)) {
+                NetworkUtils.setPreferredFormat(options.format);
+            }
+
+            System.out.printf(Locale.US, "Replaying %d bytes of JSON (%d gzipped), %d of CBOR "
+                            + "(%d gzipped) from %s, asking for %s%n",
+                    server.getBodySize(), server.getGzippedBodySize(), server.getCborBodySize(),
+                    server.getGzippedCborBodySize(), server.getBaseUrl(), options.format);
+            System.out.printf(Locale.US,
+                    "%d locations per round, %d at a time, %d ms injected latency%n%n",
+                    options.locations, Math.min(options.concurrency, NETWORK_THREADS),
+                    options.latencyMillis);
+
+            for (int i = 0; i < options.warmupRounds; i++) {
+                harness.runRound(new Report());
+            }
+            Report report = new Report();
+            for (int i = 0; i < options.rounds; i++) {
+                harness.runRound(report);
+            }
+            report.print(System.out);
+            System.out.printf(Locale.US, "%nServer handled %d requests, table holds %d rows%n",
+                    server.getRequestCount(), harness.mWeatherDao.size());
+            if (hedgeServer != null) {
+                System.out.printf(Locale.US, "Hedge server handled %d requests%n",
+                        hedgeServer.getRequestCount());
+            }
+        } finally {
+            server.stop();
+            if (hedgeServer != null) {
+                hedgeServer.stop();
+            }
+            deleteRecursively(cacheDirectory);
+        }
+    }
+
+    private void runRound(Report report) throws InterruptedException {
+        mWeatherDao.clear();
+        // Nothing of the last round may still be running or on its way to the list
+        awaitIdle(mExecutors.networkIO(), NETWORK_THREADS);
+        awaitIdle(mExecutors.diskIO(), 1);
+        awaitMainLooper();
+        mCallMetrics.clear();
+        mStores.clear();
+        mShownNanos = 0;
+        // Every location is stored, and the list shows the default one
+        mRoundDone = new CountDownLatch(mLocations.size() + 1);
+
+        mRoundStartNanos = System.nanoTime();
+        mNetworkDataSource.fetchWeather(mLocations);
+        if (!mRoundDone.await(ROUND_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Round timed out with " + mStores.size() + " of "
+                    + mLocations.size() + " locations stored");
+        }
+        report.addRound(System.nanoTime() - mRoundStartNanos);
+
+        for (String location : mLocations) {
+            WeatherHttpClient.CallMetrics metrics = mCallMetrics.get(location);
+            long[] store = mStores.get(location);
+            if (metrics == null) {
+                throw new IllegalStateException("No completed call for " + location);
+            }
+            report.add(new Sample(TimeUnit.MILLISECONDS.toNanos(metrics.headersMillis),
+                    TimeUnit.MILLISECONDS.toNanos(metrics.totalMillis - metrics.headersMillis),
+                    store[0], store[1] - mRoundStartNanos, (int) store[2], metrics.wireBytes,
+                    metrics.decodedBytes));
+        }
+        report.addShown(mShownNanos - mRoundStartNanos);
+    }
+
+    /**
+     * Waits until the executor runs as many tasks at once as it has threads, which it can only
+     * do once everything submitted before is done.
+     */
+    private static void awaitIdle(Executor executor, int threads) throws InterruptedException {
+        CountDownLatch allRunning = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                allRunning.countDown();
+                try {
+                    allRunning.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        allRunning.await();
+    }
+
+    private static void awaitMainLooper() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(done::countDown);
+        done.await();
+    }
+
+    private static String locationOf(URL url) {
+        for (String parameter : url.getQuery().split("&")) {
+            if (parameter.startsWith("q=")) {
+                try {
+                    return URLDecoder.decode(parameter.substring(2), "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Nothing runs in the background of a load test, every sync is started by a round.
+     */
+    private static final class NoSyncScheduler implements SyncScheduler {
+        @Override
+        public void startImmediateSync() {
+        }
+
+        @Override
+        public void scheduleRecurringSync(long intervalMillis) {
+        }
+
+        @Override
+        public void scheduleDeferredFullSync() {
+        }
+    }
+
+    private static final class Sample {
+        final long headersNanos;
+        final long bodyAndParseNanos;
+        final long storeNanos;
+        final long totalNanos;
+        final int entries;
+        final long wireBytes;
+        final long decodedBytes;
+
+        Sample(long headersNanos, long bodyAndParseNanos, long storeNanos, long totalNanos,
+               int entries, long wireBytes, long decodedBytes) {
+            this.headersNanos = headersNanos;
+            this.bodyAndParseNanos = bodyAndParseNanos;
+            this.storeNanos = storeNanos;
+            this.totalNanos = totalNanos;
+            this.entries = entries;
+            this.wireBytes = wireBytes;
+            this.decodedBytes = decodedBytes;
+        }
+    }
+
+    private static final class Report {
+        private final List<Sample> mSamples = new ArrayList<>();
+        private final List<Long> mShownNanos = new ArrayList<>();
+        private long mRoundNanos;
+
+        void add(Sample sample) {
+            mSamples.add(sample);
+        }
+
+        void addShown(long nanos) {
+            mShownNanos.add(nanos);
+        }
+
+        void addRound(long nanos) {
+            mRoundNanos += nanos;
+        }
+
+        void print(PrintStream out) {
+            long entries = 0;
+            long wireBytes = 0;
+            long decodedBytes = 0;
+            long[] headers = new long[mSamples.size()];
+            long[] bodyAndParse = new long[mSamples.size()];
+            long[] store = new long[mSamples.size()];
+            long[] total = new long[mSamples.size()];
+            for (int i = 0; i < mSamples.size(); i++) {
+                Sample sample = mSamples.get(i);
+                headers[i] = sample.headersNanos;
+                bodyAndParse[i] = sample.bodyAndParseNanos;
+                store[i] = sample.storeNanos;
+                total[i] = sample.totalNanos;
+                entries += sample.entries;
+                wireBytes += sample.wireBytes;
+                decodedBytes += sample.decodedBytes;
+            }
+            long[] shown = new long[mShownNanos.size()];
+            for (int i = 0; i < shown.length; i++) {
+                shown[i] = mShownNanos.get(i);
+            }
+
+            out.printf(Locale.US, "%-16s %10s %10s %10s %10s %10s%n",
+                    "stage (ms)", "p50", "p90", "p99", "max", "mean");
+            printStage(out, "headers", headers);
+            printStage(out, "body + parse", bodyAndParse);
+            printStage(out, "store", store);
+            printStage(out, "end to end", total);
+            printStage(out, "list shown", shown);
+
+            double seconds = mRoundNanos / 1e9;
+            out.printf(Locale.US, "%nThroughput: %.1f locations/s, %.0f entries/s, "
+                            + "%.2f MB/s on the wire, %.2f MB/s decoded%n",
+                    mSamples.size() / seconds, entries / seconds,
+                    wireBytes / seconds / 1e6, decodedBytes / seconds / 1e6);
+        }
+
+        private static void printStage(PrintStream out, String stage, long[] nanos) {
+            Arrays.sort(nanos);
+            long sum = 0;
+            for (long n : nanos) {
+                sum += n;
+            }
+            out.printf(Locale.US, "%-16s %10.2f %10.2f %10.2f %10.2f %10.2f%n", stage,
+                    percentile(nanos, 50) / 1e6, percentile(nanos, 90) / 1e6,
+                    percentile(nanos, 99) / 1e6, nanos[nanos.length - 1] / 1e6,
+                    sum / (double) nanos.length / 1e6);
+        }
+
+        private static long percentile(long[] sorted, int percentile) {
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+
+    private static final class Options {
+        int days = 14;
+        String payload;
+        String format = OpenWeatherCborParser.FORMAT;
+        int locations = 8;
+        int concurrency = 3;
+        long latencyMillis = 50;
+        int rounds = 20;
+        int warmupRounds = 5;
+        long maxBodyBytes = NetworkUtils.DEFAULT_MAX_BODY_BYTES;
+        int maxEntries = NetworkUtils.DEFAULT_MAX_ENTRIES;
+        int decodeThreads = 1;
+        int slowPercent = 0;
+        long slowMillis = 1000;
+        long hedgeLatencyMillis = -1;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--days":
+                        options.days = Integer.parseInt(value);
+                        break;
+                    case "--payload":
+                        options.payload = value;
+                        break;
+                    case "--format":
+                        options.format = value;
+                        break;
+                    case "--locations":
+                        options.locations = Integer.parseInt(value);
+                        break;
+                    case "--concurrency":
+                        options.concurrency = Integer.parseInt(value);
+                        break;
+                    case "--latency-ms":
+                        options.latencyMillis = Long.parseLong(value);
+                        break;
+                    case "--rounds":
+                        options.rounds = Integer.parseInt(value);
+                        break;
+                    case "--warmup":
+                        options.warmupRounds = Integer.parseInt(value);
+                        break;
+                    case "--max-body-kb":
+                        options.maxBodyBytes = Long.parseLong(value) * 1024;
+                        break;
+                    case "--max-entries":
+                        options.maxEntries = Integer.parseInt(value);
+                        break;
+                    case "--decode-threads":
+                        options.decodeThreads = Integer.parseInt(value);
+                        break;
+                    case "--slow-percent":
+                        options.slowPercent = Integer.parseInt(value);
+                        break;
+                    case "--slow-ms":
+                        options.slowMillis = Long.parseLong(value);
+                        break;
+                    case "--hedge-latency-ms":
+                        options.hedgeLatencyMillis = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            return options;
+        }
+    }
+}
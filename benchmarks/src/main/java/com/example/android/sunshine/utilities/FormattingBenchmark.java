@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats the fields of a forecast row the way the list and the detail screen bind them, one
+ * call per invocation, cycling through the rows of a two week forecast. Run with the GC profiler
+ * for the bytes allocated per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormattingBenchmark {
+
+    private static final int ROWS = 14;
+    private static final int[] WEATHER_IDS = {200, 211, 300, 500, 501, 511, 521, 600, 615,
+            701, 741, 800, 801, 802, 804, 906, 951, 962, 999};
+
+    private Context mContext;
+    private final long[] mDates = new long[ROWS];
+    private final int[] mWeatherIds = new int[ROWS];
+    private final double[] mTemperatures = new double[ROWS];
+    private final double[] mWindSpeeds = new double[ROWS];
+    private final double[] mWindDirections = new double[ROWS];
+    private int mRow;
+
+    @Setup
+    public void setUp() throws IOException {
+        mContext = ShimContext.load(new File(ShimContext.STRINGS_PATH), Locale.getDefault());
+
+        Random random = new Random(42);
+        long today = SolAppDateUtils.getNormalizedUtcMsForToday();
+        for (int row = 0; row < ROWS; row++) {
+            mDates[row] = today + row * SolAppDateUtils.DAY_IN_MILLIS;
+            mWeatherIds[row] = WEATHER_IDS[random.nextInt(WEATHER_IDS.length)];
+            mTemperatures[row] = -10 + random.nextDouble() * 45;
+            mWindSpeeds[row] = random.nextDouble() * 40;
+            mWindDirections[row] = random.nextDouble() * 360;
+        }
+    }
+
+    private int nextRow() {
+        int row = mRow;
+        mRow = row + 1 == ROWS ? 0 : row + 1;
+        return row;
+    }
+
+    @Benchmark
+    public String friendlyDate() {
+        return SolAppDateUtils.getFriendlyDateString(mContext, mDates[nextRow()], false);
+    }
+
+    @Benchmark
+    public String friendlyDateFull() {
+        return SolAppDateUtils.getFriendlyDateString(mContext, mDates[nextRow()], true);
+    }
+
+    @Benchmark
+    public long normalizedUtcMsForToday() {
+        return SolAppDateUtils.getNormalizedUtcMsForToday();
+    }
+
+    @Benchmark
+    public String weatherCondition() {
+        return SolAppWeatherUtils.getStringForWeatherCondition(mContext, mWeatherIds[nextRow()]);
+    }
+
+    @Benchmark
+    public String temperature() {
+        return SolAppWeatherUtils.formatTemperature(mContext, mTemperatures[nextRow()]);
+    }
+
+    @Benchmark
+    public String wind() {
+        int row = nextRow();
+        return SolAppWeatherUtils.getFormattedWind(mContext, mWindSpeeds[row],
+                mWindDirections[row]);
+    }
+}
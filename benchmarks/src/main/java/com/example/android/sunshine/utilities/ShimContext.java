@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+
+import com.example.android.sunshine.R;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * A context whose strings are the ones of the app's strings.xml, resolved through the ids of the
+ * R shim. Receivers are never called, and there are no preferences.
+ */
+final class ShimContext extends Context {
+
+    static final String STRINGS_PATH = "../app/src/main/res/values/strings.xml";
+
+    private final Resources mResources;
+
+    private ShimContext(Resources resources) {
+        mResources = resources;
+    }
+
+    /**
+     * @param strings The strings.xml to read, every string of the R shim has to be in it
+     */
+    static ShimContext load(File strings, Locale locale) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        try {
+            Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(strings);
+            NodeList nodes = document.getElementsByTagName("string");
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Element element = (Element) nodes.item(i);
+                values.put(element.getAttribute("name"), unescape(element.getTextContent()));
+            }
+        } catch (Exception e) {
+            throw new IOException("Cannot read " + strings, e);
+        }
+
+        Field[] fields = R.string.class.getFields();
+        String[] table = new String[fields.length];
+        for (Field field : fields) {
+            String value = values.get(field.getName());
+            if (value == null) {
+                throw new IOException("No string " + field.getName() + " in " + strings);
+            }
+            try {
+                table[field.getInt(null)] = value;
+            } catch (IllegalAccessException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return new ShimContext(new Resources(table, new Configuration(locale)));
+    }
+
+    /**
+     * Collapses white space and resolves the escapes, the way aapt compiles a string.
+     */
+    private static String unescape(String text) {
+        String collapsed = text.trim().replaceAll("\\s+", " ");
+        StringBuilder value = new StringBuilder(collapsed.length());
+        for (int i = 0; i < collapsed.length(); i++) {
+            char c = collapsed.charAt(i);
+            if (c == '"') continue;
+            if (c != '\\' || i + 1 == collapsed.length()) {
+                value.append(c);
+                continue;
+            }
+            char escaped = collapsed.charAt(++i);
+            switch (escaped) {
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    value.append((char) Integer.parseInt(collapsed.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    value.append(escaped);
+            }
+        }
+        return value.toString();
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public Resources getResources() {
+        return mResources;
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        throw new UnsupportedOperationException("No preferences in " + name);
+    }
+
+    @Override
+    public File getCacheDir() {
+        throw new UnsupportedOperationException("No cache directory");
+    }
+
+    @Override
+    public Object getSystemService(String name) {
+        return null;
+    }
+
+    @Override
+    public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        return null;
+    }
+}
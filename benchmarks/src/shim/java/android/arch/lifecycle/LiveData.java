@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.arch.lifecycle;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The part of LiveData the repository uses, without lifecycles: observers are added forever,
+ * and values are dispatched on the main looper as they are on the device.
+ */
+public abstract class LiveData<T> {
+
+    private static final Object NOT_SET = new Object();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Object mDataLock = new Object();
+    private final List<Observer<T>> mObservers = new CopyOnWriteArrayList<>();
+    private volatile Object mData = NOT_SET;
+    // Values posted before the main looper got to the previous one replace it
+    private Object mPendingData = NOT_SET;
+
+    private final Runnable mPostValueRunnable = () -> {
+        Object newValue;
+        synchronized (mDataLock) {
+            newValue = mPendingData;
+            mPendingData = NOT_SET;
+        }
+        @SuppressWarnings("unchecked")
+        T value = (T) newValue;
+        setValue(value);
+    };
+
+    public void observeForever(Observer<T> observer) {
+        mObservers.add(observer);
+        if (mObservers.size() == 1) {
+            onActive();
+        }
+        if (mData != NOT_SET) {
+            observer.onChanged(getValue());
+        }
+    }
+
+    public void removeObserver(Observer<T> observer) {
+        if (mObservers.remove(observer) && mObservers.isEmpty()) {
+            onInactive();
+        }
+    }
+
+    protected void postValue(T value) {
+        boolean postTask;
+        synchronized (mDataLock) {
+            postTask = mPendingData == NOT_SET;
+            mPendingData = value;
+        }
+        if (postTask) {
+            sMainHandler.post(mPostValueRunnable);
+        }
+    }
+
+    protected void setValue(T value) {
+        mData = value;
+        for (Observer<T> observer : mObservers) {
+            observer.onChanged(value);
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public T getValue() {
+        Object data = mData;
+        return data == NOT_SET ? null : (T) data;
+    }
+
+    public boolean hasActiveObservers() {
+        return !mObservers.isEmpty();
+    }
+
+    protected void onActive() {
+    }
+
+    protected void onInactive() {
+    }
+}
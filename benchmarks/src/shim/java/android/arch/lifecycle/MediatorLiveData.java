@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.arch.lifecycle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Observes its sources only while it is observed itself, like the framework's.
+ */
+public class MediatorLiveData<T> extends MutableLiveData<T> {
+
+    private final Map<LiveData<?>, Source<?>> mSources = new ConcurrentHashMap<>();
+
+    public <S> void addSource(LiveData<S> source, Observer<S> onChanged) {
+        Source<S> added = new Source<>(source, onChanged);
+        if (mSources.putIfAbsent(source, added) != null) {
+            throw new IllegalArgumentException("This source was already added");
+        }
+        if (hasActiveObservers()) {
+            added.plug();
+        }
+    }
+
+    public <S> void removeSource(LiveData<S> toRemove) {
+        Source<?> source = mSources.remove(toRemove);
+        if (source != null) {
+            source.unplug();
+        }
+    }
+
+    @Override
+    protected void onActive() {
+        for (Source<?> source : mSources.values()) {
+            source.plug();
+        }
+    }
+
+    @Override
+    protected void onInactive() {
+        for (Source<?> source : mSources.values()) {
+            source.unplug();
+        }
+    }
+
+    private static final class Source<V> {
+        final LiveData<V> mLiveData;
+        final Observer<V> mObserver;
+
+        Source(LiveData<V> liveData, Observer<V> observer) {
+            mLiveData = liveData;
+            mObserver = observer;
+        }
+
+        void plug() {
+            mLiveData.observeForever(mObserver);
+        }
+
+        void unplug() {
+            mLiveData.removeObserver(mObserver);
+        }
+    }
+}
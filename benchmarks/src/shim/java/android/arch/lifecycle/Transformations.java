@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.arch.lifecycle;
+
+import android.arch.core.util.Function;
+
+/**
+ * The switch map of the framework's Transformations, built on a {@link MediatorLiveData} the
+ * same way.
+ */
+public class Transformations {
+
+    private Transformations() {
+    }
+
+    public static <X, Y> LiveData<Y> switchMap(LiveData<X> trigger,
+                                               final Function<X, LiveData<Y>> func) {
+        final MediatorLiveData<Y> result = new MediatorLiveData<>();
+        result.addSource(trigger, new Observer<X>() {
+            LiveData<Y> mSource;
+
+            @Override
+            public void onChanged(X x) {
+                LiveData<Y> newLiveData = func.apply(x);
+                if (mSource == newLiveData) return;
+                if (mSource != null) {
+                    result.removeSource(mSource);
+                }
+                mSource = newLiveData;
+                if (mSource != null) {
+                    result.addSource(mSource, result::setValue);
+                }
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content;
+
+import android.content.res.Resources;
+
+import java.io.File;
+
+/**
+ * Just enough of the framework's Context for the app classes compiled into this module. Strings
+ * are resolved by the {@link Resources} of the subclass, as they are on the device.
+ */
+public abstract class Context {
+
+    public static final int MODE_PRIVATE = 0x0000;
+    public static final String CONNECTIVITY_SERVICE = "connectivity";
+
+    public abstract Context getApplicationContext();
+
+    public abstract Resources getResources();
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+    public abstract File getCacheDir();
+
+    public abstract Object getSystemService(String name);
+
+    public abstract Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter);
+
+    public final String getString(int resId) {
+        return getResources().getString(resId);
+    }
+
+    public final String getString(int resId, Object... formatArgs) {
+        return getResources().getString(resId, formatArgs);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content.res;
+
+import java.util.Locale;
+
+/**
+ * String resources held in memory, indexed by their id. Format arguments are applied in the
+ * locale of the configuration, like the framework does.
+ */
+public class Resources {
+
+    private final String[] mStrings;
+    private final Configuration mConfiguration;
+
+    public Resources(String[] strings, Configuration configuration) {
+        mStrings = strings;
+        mConfiguration = configuration;
+    }
+
+    public Configuration getConfiguration() {
+        return mConfiguration;
+    }
+
+    public String getString(int id) {
+        String string = id >= 0 && id < mStrings.length ? mStrings[id] : null;
+        if (string == null) {
+            throw new IllegalArgumentException("No string resource " + id);
+        }
+        return string;
+    }
+
+    public String getString(int id, Object... formatArgs) {
+        Locale locale = mConfiguration.locale;
+        return String.format(locale, getString(id), formatArgs);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.net;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Just enough of the framework's Uri to build the forecast request urls.
+ */
+public final class Uri {
+
+    private final String mUriString;
+
+    private Uri(String uriString) {
+        mUriString = uriString;
+    }
+
+    public static Uri parse(String uriString) {
+        return new Uri(uriString);
+    }
+
+    public Builder buildUpon() {
+        return new Builder(mUriString);
+    }
+
+    @Override
+    public String toString() {
+        return mUriString;
+    }
+
+    public static final class Builder {
+
+        private final StringBuilder mUriString;
+        private boolean mHasQuery;
+
+        private Builder(String uriString) {
+            mUriString = new StringBuilder(uriString);
+            mHasQuery = uriString.indexOf('?') >= 0;
+        }
+
+        public Builder appendQueryParameter(String key, String value) {
+            mUriString.append(mHasQuery ? '&' : '?')
+                    .append(encode(key)).append('=').append(encode(value));
+            mHasQuery = true;
+            return this;
+        }
+
+        public Uri build() {
+            return new Uri(mUriString.toString());
+        }
+
+        private static String encode(String s) {
+            try {
+                // Uri encodes spaces as %20, URLEncoder as +
+                return URLEncoder.encode(s, "UTF-8").replace("+", "%20");
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
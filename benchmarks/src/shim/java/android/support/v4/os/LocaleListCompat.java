@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.os;
+
+import java.util.Locale;
+
+/**
+ * A list of one locale, as the configuration shim holds.
+ */
+public final class LocaleListCompat {
+
+    private final Locale mLocale;
+
+    LocaleListCompat(Locale locale) {
+        mLocale = locale;
+    }
+
+    public Locale get(int index) {
+        return index == 0 ? mLocale : null;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.text.format;
+
+import android.content.Context;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * Formats dates with a SimpleDateFormat in the default locale and time zone. Only the date and
+ * weekday flags are honored, with English style patterns, so the strings and their cost are
+ * close to the framework's but not the same.
+ */
+public final class DateUtils {
+
+    public static final int FORMAT_SHOW_WEEKDAY = 0x00002;
+    public static final int FORMAT_NO_YEAR = 0x00008;
+    public static final int FORMAT_SHOW_DATE = 0x00010;
+    public static final int FORMAT_ABBREV_ALL = 0x80000;
+
+    private DateUtils() {
+    }
+
+    public static String formatDateTime(Context context, long millis, int flags) {
+        boolean abbreviate = (flags & FORMAT_ABBREV_ALL) != 0;
+        StringBuilder pattern = new StringBuilder();
+        if ((flags & FORMAT_SHOW_WEEKDAY) != 0) {
+            pattern.append(abbreviate ? "EEE" : "EEEE");
+        }
+        if ((flags & FORMAT_SHOW_DATE) != 0) {
+            if (pattern.length() > 0) pattern.append(", ");
+            pattern.append(abbreviate ? "MMM d" : "MMMM d");
+            if ((flags & FORMAT_NO_YEAR) == 0) pattern.append(", yyyy");
+        }
+        return new SimpleDateFormat(pattern.toString(), Locale.getDefault()).format(millis);
+    }
+}
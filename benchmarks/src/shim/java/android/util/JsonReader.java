@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The framework's JsonReader, backed by Gson's streaming reader that it was derived from.
+ */
+public final class JsonReader implements Closeable {
+
+    private final com.google.gson.stream.JsonReader mDelegate;
+
+    public JsonReader(Reader in) {
+        mDelegate = new com.google.gson.stream.JsonReader(in);
+    }
+
+    public void setLenient(boolean lenient) {
+        mDelegate.setLenient(lenient);
+    }
+
+    public boolean isLenient() {
+        return mDelegate.isLenient();
+    }
+
+    public void beginArray() throws IOException {
+        try {
+            mDelegate.beginArray();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public void endArray() throws IOException {
+        try {
+            mDelegate.endArray();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public void beginObject() throws IOException {
+        try {
+            mDelegate.beginObject();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public void endObject() throws IOException {
+        try {
+            mDelegate.endObject();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        try {
+            return mDelegate.hasNext();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public JsonToken peek() throws IOException {
+        try {
+            return JsonToken.valueOf(mDelegate.peek().name());
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public String nextName() throws IOException {
+        try {
+            return mDelegate.nextName();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public String nextString() throws IOException {
+        try {
+            return mDelegate.nextString();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public boolean nextBoolean() throws IOException {
+        try {
+            return mDelegate.nextBoolean();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public void nextNull() throws IOException {
+        try {
+            mDelegate.nextNull();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public double nextDouble() throws IOException {
+        try {
+            return mDelegate.nextDouble();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public long nextLong() throws IOException {
+        try {
+            return mDelegate.nextLong();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public int nextInt() throws IOException {
+        try {
+            return mDelegate.nextInt();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    public void skipValue() throws IOException {
+        try {
+            mDelegate.skipValue();
+        } catch (com.google.gson.stream.MalformedJsonException e) {
+            throw malformed(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mDelegate.close();
+    }
+
+    @Override
+    public String toString() {
+        return mDelegate.toString();
+    }
+
+    private static MalformedJsonException malformed(IOException e) {
+        MalformedJsonException malformed = new MalformedJsonException(e.getMessage());
+        malformed.initCause(e);
+        return malformed;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+/**
+ * Resource ids referenced by the app classes compiled into this module. The strings are named
+ * like the ones of the app, so a benchmark can look their values up in its strings.xml, the
+ * drawables are never resolved.
+ */
+public final class R {
+
+    public static final class string {
+        public static final int today = 0;
+        public static final int tomorrow = 1;
+        public static final int condition_2xx = 2;
+        public static final int condition_3xx = 3;
+        public static final int condition_500 = 4;
+        public static final int condition_501 = 5;
+        public static final int condition_502 = 6;
+        public static final int condition_503 = 7;
+        public static final int condition_504 = 8;
+        public static final int condition_511 = 9;
+        public static final int condition_520 = 10;
+        public static final int condition_531 = 11;
+        public static final int condition_600 = 12;
+        public static final int condition_601 = 13;
+        public static final int condition_602 = 14;
+        public static final int condition_611 = 15;
+        public static final int condition_612 = 16;
+        public static final int condition_615 = 17;
+        public static final int condition_616 = 18;
+        public static final int condition_620 = 19;
+        public static final int condition_621 = 20;
+        public static final int condition_622 = 21;
+        public static final int condition_701 = 22;
+        public static final int condition_711 = 23;
+        public static final int condition_721 = 24;
+        public static final int condition_731 = 25;
+        public static final int condition_741 = 26;
+        public static final int condition_751 = 27;
+        public static final int condition_761 = 28;
+        public static final int condition_762 = 29;
+        public static final int condition_771 = 30;
+        public static final int condition_781 = 31;
+        public static final int condition_800 = 32;
+        public static final int condition_801 = 33;
+        public static final int condition_802 = 34;
+        public static final int condition_803 = 35;
+        public static final int condition_804 = 36;
+        public static final int condition_900 = 37;
+        public static final int condition_901 = 38;
+        public static final int condition_902 = 39;
+        public static final int condition_903 = 40;
+        public static final int condition_904 = 41;
+        public static final int condition_905 = 42;
+        public static final int condition_906 = 43;
+        public static final int condition_951 = 44;
+        public static final int condition_952 = 45;
+        public static final int condition_953 = 46;
+        public static final int condition_954 = 47;
+        public static final int condition_955 = 48;
+        public static final int condition_956 = 49;
+        public static final int condition_957 = 50;
+        public static final int condition_958 = 51;
+        public static final int condition_959 = 52;
+        public static final int condition_960 = 53;
+        public static final int condition_961 = 54;
+        public static final int condition_962 = 55;
+        public static final int format_temperature = 56;
+        public static final int format_wind_kmh = 57;
+        public static final int condition_unknown = 58;
+    }
+
+    public static final class drawable {
+        public static final int art_clear = 1;
+        public static final int art_clouds = 2;
+        public static final int art_fog = 3;
+        public static final int art_light_clouds = 4;
+        public static final int art_light_rain = 5;
+        public static final int art_rain = 6;
+        public static final int art_snow = 7;
+        public static final int art_storm = 8;
+        public static final int ic_clear = 9;
+        public static final int ic_cloudy = 10;
+        public static final int ic_fog = 11;
+        public static final int ic_light_clouds = 12;
+        public static final int ic_light_rain = 13;
+        public static final int ic_rain = 14;
+        public static final int ic_snow = 15;
+        public static final int ic_storm = 16;
+    }
+}
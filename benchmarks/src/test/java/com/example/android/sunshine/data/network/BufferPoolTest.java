@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import com.sun.management.ThreadMXBean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs many decode cycles through the shared {@link BufferPool} and checks every buffer they
+ * acquire is given back, so once warmed up the pool allocates nothing, that what a sync
+ * allocates besides its entries stays under a fixed bound and does not grow from one sync to the
+ * next, and that the parallel decoder reads every body into the same buffer.
+ */
+public class BufferPoolTest {
+
+    private static final String LOCATION = "Mountain View, CA";
+    private static final int WARM_UP_CYCLES = 50;
+    private static final int CYCLES = 500;
+    private static final int CONCURRENT_DECODES = 4;
+    // HttpURLConnection alone allocates about 25 KB per request on JDK 17, so a decode buffer or
+    // an inflater allocated per sync instead of pooled goes past this
+    private static final long MAX_SYNC_ALLOCATION_BYTES = 28 * 1024;
+
+    private static final byte[] JSON = ReplayServer.syntheticForecast(14);
+    private static final byte[] CBOR = CborEncoder.fromJson(JSON);
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private String mForecastBaseUrl;
+    private String mPreferredFormat;
+
+    @Before
+    public void setUp() {
+        mForecastBaseUrl = NetworkUtils.getForecastBaseUrl();
+        mPreferredFormat = NetworkUtils.getPreferredFormat();
+    }
+
+    @After
+    public void tearDown() {
+        NetworkUtils.setForecastBaseUrl(mForecastBaseUrl);
+        NetworkUtils.setPreferredFormat(mPreferredFormat);
+    }
+
+    @Test
+    public void decodingGivesEveryBufferBack() throws Exception {
+        assertBalanced(() -> {
+            assertEquals(14, decode(new OpenWeatherJsonParser(), JSON));
+            assertEquals(14, decode(new OpenWeatherCborParser(), CBOR));
+        });
+    }
+
+    @Test
+    public void failedDecodingGivesEveryBufferBack() throws Exception {
+        byte[] error = new String(JSON, StandardCharsets.UTF_8)
+                .replace("\"cod\":\"200\"", "\"cod\":\"404\"").getBytes(StandardCharsets.UTF_8);
+        assertBalanced(() -> {
+            assertFails(new OpenWeatherJsonParser(), Arrays.copyOf(JSON, JSON.length / 2));
+            assertFails(new OpenWeatherCborParser(), Arrays.copyOf(CBOR, CBOR.length / 2));
+            assertFails(new OpenWeatherJsonParser(), error);
+        });
+    }
+
+    @Test
+    public void responsesGiveEveryBufferBack() throws Exception {
+        ReplayServer server = ReplayServer.start(JSON, 0);
+        try {
+            WeatherHttpClient client = new WeatherHttpClient(
+                    WeatherHttpClient.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                    WeatherHttpClient.DEFAULT_READ_TIMEOUT_MILLIS,
+                    WeatherHttpClient.DEFAULT_CALL_TIMEOUT_MILLIS);
+            ResponseValidatorStore validatorStore =
+                    new ResponseValidatorStore(new InMemoryPreferences());
+            ForecastResponseCache cache = new ForecastResponseCache(mTemporaryFolder.getRoot(), 0);
+            NetworkUtils.setForecastBaseUrl(server.getBaseUrl());
+            NetworkUtils.setPreferredFormat(OpenWeatherCborParser.FORMAT);
+            URL cbor = NetworkUtils.getUrl(LOCATION);
+            NetworkUtils.setPreferredFormat(OpenWeatherJsonParser.FORMAT);
+            URL json = NetworkUtils.getUrl(LOCATION);
+
+            // The bodies are gzipped, and what is left of them after decoding is drained
+            assertBalanced(() -> {
+                assertEquals(14, NetworkUtils.getResponseFromHttpUrl(client, json, LOCATION,
+                        validatorStore, cache, false).getListForecast().length);
+                assertEquals(14, NetworkUtils.getResponseFromHttpUrl(client, cbor, LOCATION,
+                        validatorStore, cache, false).getListForecast().length);
+            });
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void syncAllocationBeyondTheEntriesIsBoundedAndFlat() throws Exception {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        ReplayServer server = ReplayServer.start(JSON, 0);
+        try {
+            WeatherHttpClient client = new WeatherHttpClient(
+                    WeatherHttpClient.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                    WeatherHttpClient.DEFAULT_READ_TIMEOUT_MILLIS,
+                    WeatherHttpClient.DEFAULT_CALL_TIMEOUT_MILLIS);
+            ResponseValidatorStore validatorStore =
+                    new ResponseValidatorStore(new InMemoryPreferences());
+            ForecastResponseCache cache = new ForecastResponseCache(mTemporaryFolder.getRoot(), 0);
+            NetworkUtils.setForecastBaseUrl(server.getBaseUrl());
+            NetworkUtils.setPreferredFormat(OpenWeatherJsonParser.FORMAT);
+            URL url = NetworkUtils.getUrl(LOCATION);
+            Cycle sync = () -> assertEquals(14, NetworkUtils.getResponseFromHttpUrl(client, url,
+                    LOCATION, validatorStore, cache, false).getListForecast().length);
+
+            long entries = allocatedPerCycle(threads,
+                    () -> assertEquals(14, decode(new OpenWeatherJsonParser(), JSON)));
+            long first = allocatedPerCycle(threads, sync) - entries;
+            long later = allocatedPerCycle(threads, sync) - entries;
+
+            assertTrue("Sync allocated " + later + " bytes besides the entries",
+                    later < MAX_SYNC_ALLOCATION_BYTES);
+            // A buffer not given back, or state kept per sync, would show up as growth
+            assertTrue("Allocation per sync besides the entries grew from " + first + " to "
+                    + later + " bytes", later - first < BufferPool.BUFFER_SIZE);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void concurrentDecodingStaysWithinThePool() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_DECODES);
+        try {
+            assertBalanced(() -> {
+                List<Future<Integer>> decodes = new ArrayList<>(CONCURRENT_DECODES);
+                for (int i = 0; i < CONCURRENT_DECODES; i++) {
+                    decodes.add(executor.submit(() -> decode(new OpenWeatherJsonParser(), JSON)));
+                }
+                for (Future<Integer> decode : decodes) {
+                    assertEquals(14, (int) decode.get());
+                }
+            });
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void parallelDecoderReusesItsBuffer() throws Exception {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        ParallelJsonDecoder parallelDecoder = new ParallelJsonDecoder(CONCURRENT_DECODES);
+        try {
+            long parsing = allocatedPerCycle(threads,
+                    () -> assertEquals(14, decode(new OpenWeatherJsonParser(), JSON)));
+            long parallel = allocatedPerCycle(threads,
+                    () -> assertEquals(14, decode(parallelDecoder, JSON)));
+
+            // Reading the body again into a new buffer would cost more than the body
+            assertTrue((parallel - parsing) + " bytes allocated per decode besides parsing",
+                    parallel - parsing < JSON.length);
+        } finally {
+            parallelDecoder.shutdown();
+        }
+    }
+
+    /**
+     * Runs the cycle {@link #WARM_UP_CYCLES} times, then {@link #CYCLES} more, checking no buffer
+     * is left out of the pool after any of them, and that once warmed up the pool hands out the
+     * buffers it holds without allocating any.
+     */
+    private static void assertBalanced(Cycle cycle) throws Exception {
+        BufferPool pool = BufferPool.getInstance();
+        fill(pool);
+        long outstanding = pool.getOutstandingCount();
+        for (int i = 0; i < WARM_UP_CYCLES; i++) {
+            cycle.run();
+        }
+        long allocations = pool.getAllocationCount();
+        for (int i = 0; i < CYCLES; i++) {
+            cycle.run();
+            assertEquals("Buffers not given back after cycle " + i,
+                    outstanding, pool.getOutstandingCount());
+        }
+        assertEquals("Buffers allocated after warming up",
+                allocations, pool.getAllocationCount());
+    }
+
+    /**
+     * Makes the pool hold all the buffers it can, however many concurrent cycles end up needing
+     * at once during the warm up.
+     */
+    private static void fill(BufferPool pool) {
+        byte[][] buffers = new byte[BufferPool.MAX_POOLED_BUFFERS][];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquire();
+        }
+        for (byte[] buffer : buffers) {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * @return The bytes the calling thread allocates per run of the cycle, once warmed up
+     */
+    private static long allocatedPerCycle(ThreadMXBean threads, Cycle cycle) throws Exception {
+        for (int i = 0; i < WARM_UP_CYCLES; i++) {
+            cycle.run();
+        }
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < CYCLES; i++) {
+            cycle.run();
+        }
+        return (threads.getThreadAllocatedBytes(thread) - allocated) / CYCLES;
+    }
+
+    private static int decode(ForecastDecoder decoder, byte[] body) throws IOException {
+        return decoder.decode(new ByteArrayInputStream(body), LOCATION, 0, Integer.MAX_VALUE)
+                .getListForecast().length;
+    }
+
+    private static void assertFails(ForecastDecoder decoder, byte[] body) {
+        try {
+            decode(decoder, body);
+            throw new AssertionError("Decoded a malformed " + decoder.getFormat() + " body");
+        } catch (IOException expected) {
+        }
+    }
+
+    private interface Cycle {
+        void run() throws Exception;
+    }
+}
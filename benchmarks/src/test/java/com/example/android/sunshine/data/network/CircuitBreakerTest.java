@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.data.network.DataSourceFixtures.ForecastCounter;
+import com.example.android.sunshine.data.network.DataSourceFixtures.NoSyncScheduler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the half open state of the {@link CircuitBreaker}: one trial at a time, and a trial
+ * which ends in any way, even by throwing something other than an IOException, settles it.
+ * A fetch the open breaker blocks is retried once the breaker lets a trial through. A forecast
+ * served from the cache neither waits for the breaker nor counts as a trial.
+ */
+public class CircuitBreakerTest {
+
+    private static final String HOST = "127.0.0.1";
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final long WAIT_SECONDS = 5;
+    private static final Collection<String> DEFAULT_LOCATION =
+            Collections.singleton(WeatherNetworkDataSource.DEFAULT_LOCATION);
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void halfOpenBreakerLetsOneTrialThrough() {
+        CircuitBreaker breaker = new CircuitBreaker(new InMemoryContext(null), 1, 0);
+        breaker.recordFailure(HOST);
+
+        assertTrue(breaker.allowRequest(HOST));
+        assertFalse("Second trial let through", breaker.allowRequest(HOST));
+
+        breaker.recordSuccess(HOST);
+        assertTrue(breaker.allowRequest(HOST));
+        assertTrue(breaker.allowRequest(HOST));
+    }
+
+    @Test
+    public void failedTrialOpensTheBreakerAgain() {
+        InMemoryContext context = new InMemoryContext(null);
+        CircuitBreaker breaker = new CircuitBreaker(context, 1, TimeUnit.MINUTES.toMillis(15));
+        openSince(context, TimeUnit.MINUTES.toMillis(16));
+
+        assertTrue(breaker.allowRequest(HOST));
+        breaker.recordFailure(HOST);
+        assertFalse(breaker.allowRequest(HOST));
+
+        // Once the breaker has been open long enough, there is a new trial
+        openSince(context, TimeUnit.MINUTES.toMillis(16));
+        assertTrue(breaker.allowRequest(HOST));
+    }
+
+    @Test
+    public void trialThrowingARuntimeExceptionDoesNotBlockTheHost() throws Exception {
+        InMemoryContext context = new InMemoryContext(mTemporaryFolder.getRoot());
+        SocketHttpServer server = new SocketHttpServer();
+        try {
+            NetworkUtils.setForecastBaseUrl(server.getBaseUrl());
+            NetworkUtils.setResponseLimits(NetworkUtils.DEFAULT_MAX_BODY_BYTES,
+                    NetworkUtils.DEFAULT_MAX_ENTRIES);
+            WeatherNetworkDataSource dataSource = new WeatherNetworkDataSource(context,
+                    AppExecutors.getInstance(), new NoSyncScheduler());
+            NetworkUtils.setPreferredFormat(OpenWeatherJsonParser.FORMAT);
+            CountDownLatch fetched = new CountDownLatch(1);
+            dataSource.setOnForecastFetchedListener(new ForecastCounter(fetched));
+
+            // The trial's body makes the parser throw a NumberFormatException
+            long openedAtMillis = openSince(context, TimeUnit.MINUTES.toMillis(16));
+            server.enqueue(SocketHttpServer.fixedLength(JSON,
+                    "{\"cod\":\"not a number\"}".getBytes(StandardCharsets.UTF_8)));
+            dataSource.fetchWeather(DEFAULT_LOCATION);
+            assertTrue("The failed trial did not open the breaker again",
+                    awaitOpenedAt(context, openedAtMillis));
+
+            // As if the breaker had been open long enough, the next trial must go through
+            openSince(context, TimeUnit.MINUTES.toMillis(16));
+            server.enqueue(SocketHttpServer.fixedLength(JSON, ReplayServer.syntheticForecast(14)));
+            dataSource.fetchWeather(DEFAULT_LOCATION);
+            assertTrue("The host stayed blocked", fetched.await(WAIT_SECONDS, TimeUnit.SECONDS));
+            assertEquals(2, server.getRequestCount());
+            assertFalse("The breaker stayed open", preferences(context)
+                    .contains(CircuitBreaker.OPENED_AT_MILLIS_PREFIX + HOST));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void fetchBlockedByTheBreakerRunsOnceItLetsATrialThrough() throws Exception {
+        InMemoryContext context = new InMemoryContext(mTemporaryFolder.getRoot());
+        SocketHttpServer server = new SocketHttpServer();
+        try {
+            NetworkUtils.setForecastBaseUrl(server.getBaseUrl());
+            NetworkUtils.setResponseLimits(NetworkUtils.DEFAULT_MAX_BODY_BYTES,
+                    NetworkUtils.DEFAULT_MAX_ENTRIES);
+            WeatherNetworkDataSource dataSource = new WeatherNetworkDataSource(context,
+                    AppExecutors.getInstance(), new NoSyncScheduler());
+            NetworkUtils.setPreferredFormat(OpenWeatherJsonParser.FORMAT);
+            CountDownLatch fetched = new CountDownLatch(1);
+            dataSource.setOnForecastFetchedListener(new ForecastCounter(fetched));
+            server.enqueue(SocketHttpServer.fixedLength(JSON, ReplayServer.syntheticForecast(14)));
+
+            // Half open in a second, long before the next periodic sync
+            long openForMillis = TimeUnit.MINUTES.toMillis(15) - TimeUnit.SECONDS.toMillis(1);
+            openSince(context, openForMillis);
+            long startMillis = System.currentTimeMillis();
+            dataSource.fetchWeather(DEFAULT_LOCATION);
+
+            assertTrue("The blocked fetch was dropped",
+                    fetched.await(WAIT_SECONDS, TimeUnit.SECONDS));
+            assertTrue("The fetch went through before the breaker let a trial through",
+                    System.currentTimeMillis() - startMillis >= 900);
+            assertEquals(1, server.getRequestCount());
+            assertFalse("The trial did not close the breaker", preferences(context)
+                    .contains(CircuitBreaker.OPENED_AT_MILLIS_PREFIX + HOST));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void openBreakerStillServesAFreshCachedForecast() throws Exception {
+        InMemoryContext context = new InMemoryContext(mTemporaryFolder.getRoot());
+        openSince(context, 0);
+        assertFetchedFromCache(context);
+    }
+
+    @Test
+    public void cachedForecastIsNoTrialOfAHalfOpenBreaker() throws Exception {
+        InMemoryContext context = new InMemoryContext(mTemporaryFolder.getRoot());
+        long openedAtMillis = openSince(context, TimeUnit.MINUTES.toMillis(16));
+        assertFetchedFromCache(context);
+        assertEquals("The breaker was settled without reaching the host", openedAtMillis,
+                preferences(context).getLong(CircuitBreaker.OPENED_AT_MILLIS_PREFIX + HOST, 0));
+    }
+
+    private static SharedPreferences preferences(Context context) {
+        return context.getSharedPreferences(CircuitBreaker.PREFERENCES_NAME,
+                Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return The time the breaker of the host is now recorded as opened at
+     */
+    private static long openSince(Context context, long openForMillis) {
+        long openedAtMillis = System.currentTimeMillis() - openForMillis;
+        preferences(context).edit()
+                .putLong(CircuitBreaker.OPENED_AT_MILLIS_PREFIX + HOST, openedAtMillis)
+                .apply();
+        return openedAtMillis;
+    }
+
+    /**
+     * Caches a fresh forecast, then checks a fetch publishes it without a request.
+     */
+    private static void assertFetchedFromCache(InMemoryContext context) throws Exception {
+        SocketHttpServer server = new SocketHttpServer();
+        try {
+            NetworkUtils.setForecastBaseUrl(server.getBaseUrl());
+            NetworkUtils.setResponseLimits(NetworkUtils.DEFAULT_MAX_BODY_BYTES,
+                    NetworkUtils.DEFAULT_MAX_ENTRIES);
+            WeatherNetworkDataSource dataSource = new WeatherNetworkDataSource(context,
+                    AppExecutors.getInstance(), new NoSyncScheduler());
+            NetworkUtils.setPreferredFormat(OpenWeatherJsonParser.FORMAT);
+            cacheForecast(new File(context.getCacheDir(),
+                            WeatherNetworkDataSource.RESPONSE_CACHE_DIRECTORY),
+                    NetworkUtils.getUrl(WeatherNetworkDataSource.DEFAULT_LOCATION));
+            CountDownLatch fetched = new CountDownLatch(1);
+            dataSource.setOnForecastFetchedListener(new ForecastCounter(fetched));
+
+            dataSource.fetchWeather(DEFAULT_LOCATION);
+            assertTrue("The cached forecast was not served",
+                    fetched.await(WAIT_SECONDS, TimeUnit.SECONDS));
+            assertEquals(0, server.getRequestCount());
+        } finally {
+            server.close();
+        }
+    }
+
+    private static void cacheForecast(File directory, URL url) throws IOException {
+        ForecastResponseCache.Editor editor = new ForecastResponseCache(directory,
+                1024 * 1024).edit(url, "max-age=600", JSON);
+        assertNotNull(editor);
+        InputStream in = editor.tee(new ByteArrayInputStream(ReplayServer.syntheticForecast(14)));
+        try {
+            byte[] buffer = new byte[4096];
+            while (in.read(buffer) != -1) {
+                // Everything read goes to the cache
+            }
+        } finally {
+            in.close();
+        }
+        editor.commit();
+    }
+
+    private static boolean awaitOpenedAt(Context context, long previousOpenedAtMillis)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WAIT_SECONDS);
+        while (System.nanoTime() < deadline) {
+            long openedAtMillis = preferences(context)
+                    .getLong(CircuitBreaker.OPENED_AT_MILLIS_PREFIX + HOST, 0);
+            if (openedAtMillis > previousOpenedAtMillis) return true;
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return false;
+    }
+}
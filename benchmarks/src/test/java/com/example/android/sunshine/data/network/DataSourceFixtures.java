@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * What the tests driving a {@link WeatherNetworkDataSource} plug into it.
+ */
+final class DataSourceFixtures {
+
+    private DataSourceFixtures() {
+    }
+
+    /**
+     * Counts the latch down once per fetched forecast.
+     */
+    static final class ForecastCounter
+            implements WeatherNetworkDataSource.OnForecastFetchedListener {
+        private final CountDownLatch mFetched;
+
+        ForecastCounter(CountDownLatch fetched) {
+            mFetched = fetched;
+        }
+
+        @Override
+        public void onForecastListFetched(String locationQuery, ListWeatherEntry[] forecast) {
+        }
+
+        @Override
+        public void onForecastFetched(String locationQuery,
+                                      WeatherNetworkDataSource.FullForecast forecast) {
+            mFetched.countDown();
+        }
+    }
+
+    /**
+     * Leaves every sync to the test.
+     */
+    static final class NoSyncScheduler implements SyncScheduler {
+        @Override
+        public void startImmediateSync() {
+        }
+
+        @Override
+        public void scheduleRecurringSync(long intervalMillis) {
+        }
+
+        @Override
+        public void scheduleDeferredFullSync() {
+        }
+    }
+}
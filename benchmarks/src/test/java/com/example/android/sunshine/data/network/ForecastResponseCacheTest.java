@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the {@link ForecastResponseCache} finds entries by their url, and that a 304 only
+ * refreshes the entry of the url it answered.
+ */
+public class ForecastResponseCacheTest {
+
+    private static final long MAX_SIZE_BYTES = 1024 * 1024;
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String STALE_ONLY = "stale-while-revalidate=600";
+    private static final byte[] BODY = ReplayServer.syntheticForecast(14);
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private URL mUrl;
+    private URL mOtherUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mTemporaryFolder.newFolder();
+        mUrl = new URL("http://127.0.0.1/weather?q=Mountain+View");
+        mOtherUrl = new URL("http://127.0.0.1/weather?q=Sunnyvale");
+    }
+
+    @Test
+    public void storedBodyIsServedForItsUrlOnly() throws IOException {
+        ForecastResponseCache cache = new ForecastResponseCache(mDirectory, MAX_SIZE_BYTES);
+        store(cache, mUrl, "max-age=600");
+
+        ForecastResponseCache.Entry entry = cache.get(mUrl);
+        assertNotNull(entry);
+        assertTrue(entry.isFresh(System.currentTimeMillis()));
+        assertArrayEquals(BODY, read(entry));
+        assertNull(cache.get(mOtherUrl));
+    }
+
+    @Test
+    public void refreshRestartsTheFreshnessOfItsUrlOnly() throws IOException {
+        ForecastResponseCache cache = new ForecastResponseCache(mDirectory, MAX_SIZE_BYTES);
+        store(cache, mUrl, STALE_ONLY);
+        store(cache, mOtherUrl, STALE_ONLY);
+
+        cache.refresh(mUrl, "max-age=600");
+
+        assertTrue(cache.get(mUrl).isFresh(System.currentTimeMillis()));
+        assertArrayEquals(BODY, read(cache.get(mUrl)));
+        assertFalse(cache.get(mOtherUrl).isFresh(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void refreshOfAnUncachedUrlStoresNothing() throws IOException {
+        ForecastResponseCache cache = new ForecastResponseCache(mDirectory, MAX_SIZE_BYTES);
+        store(cache, mOtherUrl, STALE_ONLY);
+
+        cache.refresh(mUrl, "max-age=600");
+
+        assertNull(cache.get(mUrl));
+        assertFalse(cache.get(mOtherUrl).isFresh(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void entriesUnderAnotherNameAreDropped() throws IOException {
+        store(new ForecastResponseCache(mDirectory, MAX_SIZE_BYTES), mUrl, "max-age=600");
+        File[] files = mDirectory.listFiles();
+        assertEquals(1, files.length);
+        // As the cache used to name its files
+        File renamed = new File(mDirectory,
+                Integer.toHexString(mUrl.toString().hashCode()) + ".body");
+        assertTrue(files[0].renameTo(renamed));
+
+        assertNull(new ForecastResponseCache(mDirectory, MAX_SIZE_BYTES).get(mUrl));
+        assertFalse(renamed.exists());
+    }
+
+    private static void store(ForecastResponseCache cache, URL url, String cacheControl)
+            throws IOException {
+        ForecastResponseCache.Editor editor = cache.edit(url, cacheControl, JSON);
+        assertNotNull(editor);
+        InputStream in = editor.tee(new ByteArrayInputStream(BODY));
+        try {
+            byte[] buffer = new byte[4096];
+            while (in.read(buffer) != -1) {
+                // Everything read goes to the cache
+            }
+        } finally {
+            in.close();
+        }
+        editor.commit();
+    }
+
+    private static byte[] read(ForecastResponseCache.Entry entry) throws IOException {
+        InputStream in = entry.openBody();
+        try {
+            byte[] body = new byte[BODY.length + 1];
+            int length = 0;
+            int read;
+            while ((read = in.read(body, length, body.length - length)) > 0) {
+                length += read;
+            }
+            assertEquals(BODY.length, length);
+            return Arrays.copyOf(body, length);
+        } finally {
+            in.close();
+        }
+    }
+}
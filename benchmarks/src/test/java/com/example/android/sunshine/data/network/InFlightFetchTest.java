@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import com.example.android.sunshine.AppExecutors;
+import com.example.android.sunshine.data.network.DataSourceFixtures.ForecastCounter;
+import com.example.android.sunshine.data.network.DataSourceFixtures.NoSyncScheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks a location requested again while its fetch is running joins that fetch, and is only
+ * fetched once more after it when the request needs more than the running fetch does.
+ */
+public class InFlightFetchTest {
+
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final long WAIT_SECONDS = 5;
+    // Long enough for a duplicate fetch to reach the listener
+    private static final long SETTLE_MILLIS = 500;
+    private static final Collection<String> DEFAULT_LOCATION =
+            Collections.singleton(WeatherNetworkDataSource.DEFAULT_LOCATION);
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private SocketHttpServer mServer;
+    private InMemoryContext mContext;
+    private WeatherNetworkDataSource mDataSource;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new SocketHttpServer();
+        NetworkUtils.setForecastBaseUrl(mServer.getBaseUrl());
+        NetworkUtils.setResponseLimits(NetworkUtils.DEFAULT_MAX_BODY_BYTES,
+                NetworkUtils.DEFAULT_MAX_ENTRIES);
+        mContext = new InMemoryContext(mTemporaryFolder.getRoot());
+        mDataSource = new WeatherNetworkDataSource(mContext, AppExecutors.getInstance(),
+                new NoSyncScheduler());
+        NetworkUtils.setPreferredFormat(OpenWeatherJsonParser.FORMAT);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    @Test
+    public void fetchRequestedWhileInFlightJoinsIt() throws Exception {
+        CountDownLatch fetched = new CountDownLatch(2);
+        mDataSource.setOnForecastFetchedListener(new ForecastCounter(fetched));
+        CountDownLatch release = holdFirstResponse();
+
+        mDataSource.fetchWeather(DEFAULT_LOCATION);
+        awaitRequests(1);
+        mDataSource.fetchWeather(DEFAULT_LOCATION);
+        release.countDown();
+
+        // Both callers get the one forecast through the listener they share
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WAIT_SECONDS);
+        while (fetched.getCount() > 1) {
+            assertTrue("The forecast in flight was not published", System.nanoTime() < deadline);
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertFalse("The location was fetched twice",
+                fetched.await(SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    @Test
+    public void everyDayIsFetchedAfterALimitedFetchInFlight() throws Exception {
+        // A slow round trip makes the planner limit the fetch to the first few days
+        new SyncPlanner(mContext).onCallFinished(new WeatherHttpClient.CallMetrics(
+                NetworkUtils.getUrl(WeatherNetworkDataSource.DEFAULT_LOCATION), true, false,
+                2000, 2000, 0, 0));
+        CountDownLatch fetched = new CountDownLatch(2);
+        mDataSource.setOnForecastFetchedListener(new ForecastCounter(fetched));
+        CountDownLatch release = holdFirstResponse();
+
+        mDataSource.fetchWeather(DEFAULT_LOCATION);
+        awaitRequests(1);
+        // As the deferred sync does
+        mDataSource.fetchWeather(true);
+        release.countDown();
+
+        assertTrue("The days beyond the fetch in flight were dropped",
+                fetched.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void missingForecastsAreFetchedAgainAfterTheFetchInFlight() throws Exception {
+        CountDownLatch fetched = new CountDownLatch(2);
+        mDataSource.setOnForecastFetchedListener(new ForecastCounter(fetched));
+        CountDownLatch release = holdFirstResponse();
+
+        mDataSource.fetchWeather(DEFAULT_LOCATION);
+        awaitRequests(1);
+        // The sync it starts is a no-op here, the fetch in flight must still be followed up
+        mDataSource.startFetchWeatherService();
+        release.countDown();
+
+        assertTrue("The fetch in flight was not followed up",
+                fetched.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    /**
+     * Enqueues a forecast which is only sent once the returned latch is released, then another
+     * one sent right away.
+     */
+    private CountDownLatch holdFirstResponse() {
+        byte[] forecast = ReplayServer.syntheticForecast(14);
+        CountDownLatch release = new CountDownLatch(1);
+        mServer.enqueue(out -> {
+            try {
+                release.await(WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            SocketHttpServer.fixedLength(JSON, forecast).respond(out);
+        });
+        mServer.enqueue(SocketHttpServer.fixedLength(JSON, forecast));
+        return release;
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WAIT_SECONDS);
+        while (mServer.getRequestCount() < count) {
+            assertTrue("No request reached the server", System.nanoTime() < deadline);
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.data.database.WeatherEntry;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks {@link ParallelJsonDecoder} decodes every payload as {@link OpenWeatherJsonParser} does,
+ * field by field, whatever its number of threads, and fails where it fails.
+ */
+public class ParallelJsonDecoderTest {
+
+    private static final String LOCATION = "Mountain View, CA";
+    private static final int[] THREADS = {2, 3, 4, 8};
+    private static final double DELTA = 0;
+
+    @Test
+    public void smallForecastIsDecodedAlike() throws IOException {
+        assertDecodedAlike(ReplayServer.syntheticForecast(14), Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void forecastAtTheParallelThresholdIsDecodedAlike() throws IOException {
+        assertDecodedAlike(ReplayServer.syntheticForecast(
+                ParallelJsonDecoder.MIN_PARALLEL_ENTRIES), Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void largeForecastIsDecodedAlike() throws IOException {
+        assertDecodedAlike(ReplayServer.syntheticForecast(5000), Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void forecastOfUnevenRunsIsDecodedAlike() throws IOException {
+        // Not a multiple of any number of runs
+        assertDecodedAlike(ReplayServer.syntheticForecast(1021), Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void entriesBeforeTheFirstAreSkippedAlike() throws IOException {
+        byte[] json = ReplayServer.syntheticForecast(5000);
+        WeatherResponse full = new OpenWeatherJsonParser()
+                .decode(new ByteArrayInputStream(json), LOCATION, 0, Integer.MAX_VALUE);
+        long startDay = full.getListForecast()[0].getEpochDay();
+        for (int firstEntry : new int[]{1, 4000, 4600, 5000}) {
+            // The window of the full forecast is decoded all the same, then cut down
+            WeatherResponse expected = full.window(startDay + firstEntry, Long.MAX_VALUE);
+            assertSameForecast("sequential from " + firstEntry, expected,
+                    new OpenWeatherJsonParser().decode(new ByteArrayInputStream(json), LOCATION,
+                            firstEntry, Integer.MAX_VALUE));
+            for (int threads : THREADS) {
+                ParallelJsonDecoder decoder = new ParallelJsonDecoder(threads);
+                try {
+                    assertSameForecast(threads + " threads from " + firstEntry, expected,
+                            decoder.decode(new ByteArrayInputStream(json), LOCATION, firstEntry,
+                                    Integer.MAX_VALUE));
+                } finally {
+                    decoder.shutdown();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tooManyEntriesAreRejectedAlike() throws IOException {
+        byte[] json = ReplayServer.syntheticForecast(5000);
+        assertFailsAlike(json, 4999, ResponseTooLargeException.class);
+        assertDecodedAlike(json, 5000);
+    }
+
+    @Test
+    public void errorCodeIsReportedAlike() throws IOException {
+        byte[] json = replace(ReplayServer.syntheticForecast(5000), "\"cod\":\"200\"",
+                "\"cod\":\"404\"");
+        assertFailsAlike(json, Integer.MAX_VALUE, ForecastErrorException.class);
+    }
+
+    @Test
+    public void errorCodeAfterTheListIsReportedAlike() throws IOException {
+        String json = new String(ReplayServer.syntheticForecast(5000), StandardCharsets.UTF_8)
+                .replace("\"cod\":\"200\",", "");
+        json = json.substring(0, json.length() - 1) + ",\"cod\":\"500\"}";
+        assertFailsAlike(json.getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE,
+                ForecastErrorException.class);
+    }
+
+    @Test
+    public void truncatedForecastFailsAlike() throws IOException {
+        byte[] json = ReplayServer.syntheticForecast(5000);
+        assertFailsAlike(Arrays.copyOf(json, json.length / 2), Integer.MAX_VALUE,
+                IOException.class);
+    }
+
+    private static void assertDecodedAlike(byte[] json, int maxEntries) throws IOException {
+        WeatherResponse expected = new OpenWeatherJsonParser()
+                .decode(new ByteArrayInputStream(json), LOCATION, 0, maxEntries);
+        for (int threads : THREADS) {
+            ParallelJsonDecoder decoder = new ParallelJsonDecoder(threads);
+            try {
+                WeatherResponse actual =
+                        decoder.decode(new ByteArrayInputStream(json), LOCATION, 0, maxEntries);
+                assertSameForecast(threads + " threads", expected, actual);
+            } finally {
+                decoder.shutdown();
+            }
+        }
+    }
+
+    private static void assertSameForecast(String message, WeatherResponse expected,
+                                           WeatherResponse actual) {
+        ListWeatherEntry[] expectedList = expected.getListForecast();
+        ListWeatherEntry[] actualList = actual.getListForecast();
+        assertEquals(message, expectedList.length, actualList.length);
+        for (int i = 0; i < expectedList.length; i++) {
+            String entry = message + ", entry " + i;
+            assertEquals(entry, expectedList[i].getEpochDay(), actualList[i].getEpochDay());
+            assertEquals(entry, expectedList[i].getWeatherIconId(),
+                    actualList[i].getWeatherIconId());
+            assertEquals(entry, expectedList[i].getMin(), actualList[i].getMin(), DELTA);
+            assertEquals(entry, expectedList[i].getMax(), actualList[i].getMax(), DELTA);
+        }
+
+        WeatherEntry[] expectedEntries = expected.getWeatherForecast();
+        WeatherEntry[] actualEntries = actual.getWeatherForecast();
+        for (int i = 0; i < expectedEntries.length; i++) {
+            String entry = message + ", entry " + i;
+            assertEquals(entry, expectedEntries[i].getLocation(), actualEntries[i].getLocation());
+            assertEquals(entry, expectedEntries[i].getHumidity(), actualEntries[i].getHumidity(),
+                    DELTA);
+            assertEquals(entry, expectedEntries[i].getPressure(), actualEntries[i].getPressure(),
+                    DELTA);
+            assertEquals(entry, expectedEntries[i].getWind(), actualEntries[i].getWind(), DELTA);
+            assertEquals(entry, expectedEntries[i].getDegrees(), actualEntries[i].getDegrees(),
+                    DELTA);
+        }
+    }
+
+    private static void assertFailsAlike(byte[] json, int maxEntries,
+                                         Class<? extends IOException> failure) {
+        assertFails("sequential", failure, () -> new OpenWeatherJsonParser()
+                .decode(new ByteArrayInputStream(json), LOCATION, 0, maxEntries));
+        for (int threads : THREADS) {
+            ParallelJsonDecoder decoder = new ParallelJsonDecoder(threads);
+            try {
+                assertFails(threads + " threads", failure, () -> decoder
+                        .decode(new ByteArrayInputStream(json), LOCATION, 0, maxEntries));
+            } finally {
+                decoder.shutdown();
+            }
+        }
+    }
+
+    private static void assertFails(String message, Class<? extends IOException> failure,
+                                    Decode decode) {
+        try {
+            decode.run();
+            fail(message + ": expected " + failure.getSimpleName());
+        } catch (IOException e) {
+            if (!failure.isInstance(e)) {
+                throw new AssertionError(message + ": expected " + failure.getSimpleName()
+                        + " but got " + e, e);
+            }
+        }
+    }
+
+    private static byte[] replace(byte[] json, String target, String replacement) {
+        return new String(json, StandardCharsets.UTF_8).replace(target, replacement)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private interface Decode {
+        void run() throws IOException;
+    }
+}
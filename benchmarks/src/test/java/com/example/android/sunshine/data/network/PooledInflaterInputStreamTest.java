@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks {@link PooledInflaterInputStream} inflates what GZIPOutputStream and
+ * DeflaterOutputStream write, with or without the optional gzip header fields, rejects corrupt
+ * and truncated bodies, and gives its buffer back whichever way it ends.
+ */
+public class PooledInflaterInputStreamTest {
+
+    // Several buffers long, so the trailer is read from the buffer or past it
+    private static final byte[] BODY = ReplayServer.syntheticForecast(1000);
+
+    @Test
+    public void gzipBodyIsInflated() throws IOException {
+        byte[] gzipped = gzip(BODY);
+        assertInflated(() -> PooledInflaterInputStream.gzip(new ByteArrayInputStream(gzipped)));
+    }
+
+    @Test
+    public void gzipHeaderFieldsAreSkipped() throws IOException {
+        byte[] gzipped = gzipWithHeaderFields(BODY);
+        assertInflated(() -> PooledInflaterInputStream.gzip(new ByteArrayInputStream(gzipped)));
+    }
+
+    @Test
+    public void deflateBodyIsInflated() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(BODY);
+        }
+        byte[] deflated = bytes.toByteArray();
+        assertInflated(() -> PooledInflaterInputStream.deflate(
+                new ByteArrayInputStream(deflated)));
+    }
+
+    @Test
+    public void corruptTrailerIsRejected() throws IOException {
+        byte[] gzipped = gzip(BODY);
+        // The first byte of the CRC
+        gzipped[gzipped.length - 8] ^= 1;
+        assertFails(gzipped, ZipException.class);
+    }
+
+    @Test
+    public void truncatedBodyIsRejected() throws IOException {
+        byte[] gzipped = gzip(BODY);
+        assertFails(Arrays.copyOf(gzipped, gzipped.length - 4), EOFException.class);
+        assertFails(Arrays.copyOf(gzipped, gzipped.length / 2), EOFException.class);
+        assertFails(Arrays.copyOf(gzipped, 5), EOFException.class);
+    }
+
+    private static void assertInflated(Opener opener) throws IOException {
+        long outstanding = BufferPool.getInstance().getOutstandingCount();
+        InputStream in = opener.open();
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream(BODY.length);
+        try {
+            byte[] buffer = new byte[1000];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                inflated.write(buffer, 0, read);
+            }
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+        assertArrayEquals(BODY, inflated.toByteArray());
+        assertEquals(outstanding, BufferPool.getInstance().getOutstandingCount());
+    }
+
+    private static void assertFails(byte[] gzipped, Class<? extends IOException> failure) {
+        long outstanding = BufferPool.getInstance().getOutstandingCount();
+        try {
+            InputStream in = PooledInflaterInputStream.gzip(new ByteArrayInputStream(gzipped));
+            try {
+                byte[] buffer = new byte[1000];
+                while (in.read(buffer) != -1) {
+                    // Reading to the end, or to the failure
+                }
+            } finally {
+                in.close();
+            }
+            fail("Expected " + failure.getSimpleName());
+        } catch (IOException e) {
+            if (!failure.isInstance(e)) {
+                throw new AssertionError("Expected " + failure.getSimpleName() + " but got " + e,
+                        e);
+            }
+        }
+        assertEquals(outstanding, BufferPool.getInstance().getOutstandingCount());
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(body);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return A gzip member with an extra field, a file name, a comment and a header CRC, which
+     * GZIPOutputStream never writes
+     */
+    private static byte[] gzipWithHeaderFields(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(new byte[]{0x1f, (byte) 0x8b, 8, 2 | 4 | 8 | 16, 0, 0, 0, 0, 0, (byte) 255});
+        bytes.write(new byte[]{3, 0, 'x', 'y', 'z'});
+        bytes.write("forecast.json\0".getBytes(StandardCharsets.US_ASCII));
+        bytes.write("a comment\0".getBytes(StandardCharsets.US_ASCII));
+        // Not checked by the stream
+        bytes.write(new byte[]{0, 0});
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        // Closing it finishes the deflate data, closing a ByteArrayOutputStream does nothing
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+            out.write(body);
+        } finally {
+            deflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        writeInt(bytes, crc.getValue());
+        writeInt(bytes, body.length);
+        return bytes.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value) {
+        for (int i = 0; i < 4; i++) {
+            out.write((int) (value >>> (8 * i)));
+        }
+    }
+
+    private interface Opener {
+        InputStream open() throws IOException;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Races a slow primary server against a fast secondary one through a {@link RequestHedger}, and
+ * checks the secondary's response wins, the primary's call is canceled, and a primary answering
+ * within the hedging delay is never hedged.
+ */
+public class RequestHedgerTest {
+
+    private static final String LOCATION = "Mountain View, CA";
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final long HEDGE_DELAY_MILLIS = 200;
+    private static final long SLOW_PRIMARY_MILLIS = 3000;
+
+    // Told apart by their number of entries
+    private static final byte[] PRIMARY_FORECAST = ReplayServer.syntheticForecast(7);
+    private static final byte[] SECONDARY_FORECAST = ReplayServer.syntheticForecast(14);
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private SocketHttpServer mPrimary;
+    private SocketHttpServer mSecondary;
+    private WeatherHttpClient mHttpClient;
+    private ResponseValidatorStore mValidatorStore;
+    private ForecastResponseCache mResponseCache;
+    private RequestHedger mHedger;
+    private String mForecastBaseUrl;
+    private String mPreferredFormat;
+
+    @Before
+    public void setUp() throws IOException {
+        mForecastBaseUrl = NetworkUtils.getForecastBaseUrl();
+        mPreferredFormat = NetworkUtils.getPreferredFormat();
+
+        mPrimary = new SocketHttpServer();
+        mSecondary = new SocketHttpServer();
+        mHttpClient = new WeatherHttpClient(WeatherHttpClient.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                WeatherHttpClient.DEFAULT_READ_TIMEOUT_MILLIS,
+                WeatherHttpClient.DEFAULT_CALL_TIMEOUT_MILLIS);
+        mValidatorStore = new ResponseValidatorStore(new InMemoryPreferences());
+        mResponseCache = new ForecastResponseCache(mTemporaryFolder.getRoot(), 0);
+        // Too few latencies are known for a percentile, so every request is hedged after this
+        mHedger = new RequestHedger(95, HEDGE_DELAY_MILLIS, HEDGE_DELAY_MILLIS);
+
+        NetworkUtils.setForecastBaseUrl(mPrimary.getBaseUrl());
+        NetworkUtils.setPreferredFormat(OpenWeatherJsonParser.FORMAT);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        NetworkUtils.setForecastBaseUrl(mForecastBaseUrl);
+        NetworkUtils.setPreferredFormat(mPreferredFormat);
+        mPrimary.close();
+        mSecondary.close();
+    }
+
+    @Test
+    public void fastSecondaryWinsAndSlowPrimaryIsCanceled() throws Exception {
+        mPrimary.enqueue(SocketHttpServer.delayed(SLOW_PRIMARY_MILLIS,
+                SocketHttpServer.fixedLength(JSON, PRIMARY_FORECAST)));
+        mSecondary.enqueue(SocketHttpServer.fixedLength(JSON, SECONDARY_FORECAST));
+        RecordingRequest primary = new RecordingRequest(NetworkUtils.getUrl(LOCATION));
+        RecordingRequest secondary = new RecordingRequest(secondaryUrl());
+
+        long startMillis = System.currentTimeMillis();
+        WeatherResponse response = mHedger.execute(primary, secondary);
+        long elapsedMillis = System.currentTimeMillis() - startMillis;
+
+        assertEquals(14, response.getListForecast().length);
+        assertEquals(1, mSecondary.getRequestCount());
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < SLOW_PRIMARY_MILLIS);
+
+        // The primary is aborted as soon as the secondary has won, long before its answer
+        assertTrue(primary.awaitFinished(SLOW_PRIMARY_MILLIS / 2));
+        assertTrue(primary.mCancellation.get().isCanceled());
+        assertNotNull(primary.mFailure.get());
+        assertTrue(mPrimary.awaitClosed(1, 2 * SLOW_PRIMARY_MILLIS, TimeUnit.MILLISECONDS));
+        assertNull(secondary.mFailure.get());
+    }
+
+    @Test
+    public void primaryAnsweringBeforeTheDelayIsNotHedged() throws Exception {
+        mPrimary.enqueue(SocketHttpServer.fixedLength(JSON, PRIMARY_FORECAST));
+        RecordingRequest primary = new RecordingRequest(NetworkUtils.getUrl(LOCATION));
+        RecordingRequest secondary = new RecordingRequest(secondaryUrl());
+
+        WeatherResponse response = mHedger.execute(primary, secondary);
+        // Long enough for a hedge fired late to reach the secondary
+        TimeUnit.MILLISECONDS.sleep(2 * HEDGE_DELAY_MILLIS);
+
+        assertEquals(7, response.getListForecast().length);
+        assertEquals(0, mSecondary.getRequestCount());
+        assertEquals(0, mSecondary.getConnectionCount());
+        assertNull(secondary.mCancellation.get());
+        // The primary completed, so its connection was kept rather than dropped
+        assertFalse(mPrimary.isClosed(1));
+    }
+
+    private URL secondaryUrl() throws IOException {
+        String primaryUrl = NetworkUtils.getUrl(LOCATION).toString();
+        return new URL(mSecondary.getBaseUrl()
+                + primaryUrl.substring(mPrimary.getBaseUrl().length()));
+    }
+
+    /**
+     * Fetches the forecast from its url, and records how the request ended.
+     */
+    private final class RecordingRequest implements RequestHedger.Request {
+        final AtomicReference<WeatherHttpClient.CancellationSignal> mCancellation =
+                new AtomicReference<>();
+        final AtomicReference<IOException> mFailure = new AtomicReference<>();
+        private final URL mUrl;
+        private final CountDownLatch mFinished = new CountDownLatch(1);
+
+        RecordingRequest(URL url) {
+            mUrl = url;
+        }
+
+        @Override
+        public WeatherResponse execute(WeatherHttpClient.CancellationSignal cancellation)
+                throws IOException {
+            mCancellation.set(cancellation);
+            try {
+                return NetworkUtils.getResponseFromHttpUrl(mHttpClient, mUrl, LOCATION, 0,
+                        mValidatorStore, mResponseCache, false, cancellation);
+            } catch (IOException e) {
+                mFailure.set(e);
+                throw e;
+            } finally {
+                mFinished.countDown();
+            }
+        }
+
+        boolean awaitFinished(long timeoutMillis) throws InterruptedException {
+            return mFinished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
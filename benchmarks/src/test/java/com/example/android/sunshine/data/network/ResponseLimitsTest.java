@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Feeds oversized and endless bodies through the client and the parser, and checks they are
+ * abandoned with a {@link ResponseTooLargeException} and their connection dropped rather than
+ * handed back to the keep-alive pool.
+ */
+public class ResponseLimitsTest {
+
+    private static final String LOCATION = "Mountain View, CA";
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+    private static final int MAX_ENTRIES = 1000;
+
+    private static final byte[] PADDING_HEAD =
+            "{\"cod\":\"200\",\"padding\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PADDING_TAIL = "\",\"list\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    static {
+        // Unlike Android, the JVM drains up to 512 KB of a disconnected body in the background to
+        // pool its connection. Off, so a dropped connection is dropped here as on a device.
+        System.setProperty("http.KeepAlive.remainingData", "0");
+    }
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private SocketHttpServer mServer;
+    private WeatherHttpClient mHttpClient;
+    private ResponseValidatorStore mValidatorStore;
+    private ForecastResponseCache mResponseCache;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new SocketHttpServer();
+        mHttpClient = new WeatherHttpClient(WeatherHttpClient.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                WeatherHttpClient.DEFAULT_READ_TIMEOUT_MILLIS,
+                WeatherHttpClient.DEFAULT_CALL_TIMEOUT_MILLIS);
+        mValidatorStore = new ResponseValidatorStore(new InMemoryPreferences());
+        mResponseCache = new ForecastResponseCache(mTemporaryFolder.getRoot(), 0);
+
+        NetworkUtils.setForecastBaseUrl(mServer.getBaseUrl());
+        NetworkUtils.setPreferredFormat(OpenWeatherJsonParser.FORMAT);
+        NetworkUtils.setResponseLimits(MAX_BODY_BYTES, MAX_ENTRIES);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        NetworkUtils.setResponseLimits(NetworkUtils.DEFAULT_MAX_BODY_BYTES,
+                NetworkUtils.DEFAULT_MAX_ENTRIES);
+        mServer.close();
+    }
+
+    @Test
+    public void completedResponseKeepsItsConnection() throws Exception {
+        mServer.enqueue(SocketHttpServer.fixedLength(JSON, ReplayServer.syntheticForecast(14)));
+        mServer.enqueue(SocketHttpServer.fixedLength(JSON, ReplayServer.syntheticForecast(14)));
+
+        assertEquals(14, fetch().getListForecast().length);
+        assertEquals(14, fetch().getListForecast().length);
+
+        assertEquals(1, mServer.getConnectionCount());
+        assertFalse(mServer.isClosed(1));
+    }
+
+    @Test
+    public void declaredLengthOverLimitIsRejectedBeforeTheBody() throws Exception {
+        mServer.enqueue(SocketHttpServer.fixedLength(JSON, null, padding(64 * 1024),
+                8L * MAX_BODY_BYTES));
+
+        assertTooLarge();
+        assertConnectionDropped();
+    }
+
+    @Test
+    public void chunkedBodyOverLimitIsRejected() throws Exception {
+        mServer.enqueue(SocketHttpServer.chunked(JSON, PADDING_HEAD, padding(64 * 1024),
+                PADDING_TAIL, 64, 0));
+
+        assertTooLarge();
+        assertConnectionDropped();
+    }
+
+    @Test
+    public void compressedBodyInflatingOverLimitIsRejected() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(PADDING_HEAD);
+            byte[] padding = padding(64 * 1024);
+            for (int i = 0; i < 64; i++) {
+                out.write(padding);
+            }
+            out.write(PADDING_TAIL);
+        }
+        byte[] gzipped = bytes.toByteArray();
+        // Small enough on the wire to pass the Content-Length check
+        assertTrue(gzipped.length < MAX_BODY_BYTES);
+        mServer.enqueue(SocketHttpServer.fixedLength(JSON, "gzip", gzipped, gzipped.length));
+
+        assertTooLarge();
+        assertConnectionDropped();
+    }
+
+    @Test
+    public void slowDripIsAbandonedAtTheLimit() throws Exception {
+        // 8 MB in 16 KB drops, which would take more than 5 s to send in full
+        int drops = 512;
+        long pauseMillis = 10;
+        mServer.enqueue(SocketHttpServer.chunked(JSON, PADDING_HEAD, padding(16 * 1024),
+                PADDING_TAIL, drops, pauseMillis));
+
+        long start = System.nanoTime();
+        assertTooLarge();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("Waited " + elapsedMillis + " ms for the body",
+                elapsedMillis < drops * pauseMillis / 2);
+        assertConnectionDropped();
+    }
+
+    @Test
+    public void tooManyEntriesAreRejected() throws Exception {
+        byte[] forecast = ReplayServer.syntheticForecast(2 * MAX_ENTRIES);
+        assertTrue(forecast.length < MAX_BODY_BYTES);
+        mServer.enqueue(SocketHttpServer.fixedLength(JSON, forecast));
+
+        assertTooLarge();
+        assertConnectionDropped();
+    }
+
+    private WeatherResponse fetch() throws IOException {
+        return NetworkUtils.getResponseFromHttpUrl(mHttpClient, NetworkUtils.getUrl(LOCATION),
+                LOCATION, mValidatorStore, mResponseCache, false);
+    }
+
+    private void assertTooLarge() throws IOException {
+        try {
+            fetch();
+            fail("Expected a ResponseTooLargeException");
+        } catch (ResponseTooLargeException expected) {
+        }
+    }
+
+    /**
+     * Checks the client closed the connection of the first response, and that the next request
+     * has to open a new one.
+     */
+    private void assertConnectionDropped() throws Exception {
+        assertTrue("The connection was not closed",
+                mServer.awaitClosed(1, 5, TimeUnit.SECONDS));
+
+        mServer.enqueue(SocketHttpServer.fixedLength(JSON, ReplayServer.syntheticForecast(14)));
+        assertEquals(14, fetch().getListForecast().length);
+        assertEquals(2, mServer.getConnectionCount());
+    }
+
+    private static byte[] padding(int length) {
+        byte[] padding = new byte[length];
+        Arrays.fill(padding, (byte) 'x');
+        return padding;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bare HTTP/1.1 server on its own sockets, so a test can see which connections the client
+ * keeps alive and which it drops. Each request is answered by the next enqueued
+ * {@link Responder}, on whatever connection it arrives.
+ */
+final class SocketHttpServer implements Closeable {
+
+    private static final String PATH = "/weather";
+
+    /**
+     * Writes a whole response, status line included.
+     */
+    interface Responder {
+        void respond(OutputStream out) throws IOException;
+    }
+
+    private final ServerSocket mServerSocket;
+    private final BlockingQueue<Responder> mResponders = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Integer> mClosedConnections = new LinkedBlockingQueue<>();
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+
+    SocketHttpServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "SocketHttpServer");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    String getBaseUrl() {
+        return "http://" + mServerSocket.getInetAddress().getHostAddress() + ":"
+                + mServerSocket.getLocalPort() + PATH;
+    }
+
+    void enqueue(Responder responder) {
+        mResponders.add(responder);
+    }
+
+    /**
+     * @return How many connections the client has opened so far
+     */
+    int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    /**
+     * @return How many requests the client has sent so far, on any connection
+     */
+    int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Waits for the client to close a connection, connections being numbered from 1 in the
+     * order they were opened.
+     *
+     * @return Whether the connection was closed in time
+     */
+    boolean awaitClosed(int connection, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!mClosedConnections.contains(connection)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return false;
+            Integer closed = mClosedConnections.poll(remaining, TimeUnit.NANOSECONDS);
+            if (closed != null) {
+                mClosedConnections.add(closed);
+            }
+        }
+        return true;
+    }
+
+    boolean isClosed(int connection) {
+        return mClosedConnections.contains(connection);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mServerSocket.close();
+    }
+
+    private void accept() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                Socket socket = mServerSocket.accept();
+                int connection = mConnectionCount.incrementAndGet();
+                Thread thread = new Thread(() -> serve(socket, connection),
+                        "SocketHttpServer connection " + connection);
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket, int connection) {
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            // Serves requests for as long as the client keeps the connection
+            while (readRequestHead(in)) {
+                mRequestCount.incrementAndGet();
+                Responder responder = mResponders.poll(10, TimeUnit.SECONDS);
+                if (responder == null) break;
+                responder.respond(out);
+                out.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            // The client went away while the response was being written
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+            mClosedConnections.add(connection);
+        }
+    }
+
+    /**
+     * @return False if the client closed the connection instead of sending another request
+     */
+    private static boolean readRequestHead(InputStream in) throws IOException {
+        int matched = 0;
+        int read;
+        try {
+            // Requests have no body, the head ends with an empty line
+            while (matched < 4 && (read = in.read()) != -1) {
+                matched = read == (matched % 2 == 0 ? '\r' : '\n') ? matched + 1
+                        : read == '\r' ? 1 : 0;
+            }
+        } catch (SocketException e) {
+            return false;
+        }
+        return matched == 4;
+    }
+
+    /**
+     * @return A response with a Content-Length, whose body is the given one repeated as many times
+     * as it takes to send {@code length} bytes
+     */
+    static Responder fixedLength(String contentType, String contentEncoding, byte[] body,
+                                 long length) {
+        return out -> {
+            writeHead(out, contentType, contentEncoding, "Content-Length: " + length);
+            for (long written = 0; written < length; written += body.length) {
+                out.write(body, 0, (int) Math.min(body.length, length - written));
+            }
+        };
+    }
+
+    static Responder fixedLength(String contentType, byte[] body) {
+        return fixedLength(contentType, null, body, body.length);
+    }
+
+    /**
+     * @return The given response, sent once {@code delayMillis} have passed
+     */
+    static Responder delayed(long delayMillis, Responder responder) {
+        return out -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            responder.respond(out);
+        };
+    }
+
+    /**
+     * @return A chunked response that sends the head, then the middle repeated {@code repeats}
+     * times with a pause before each, then the tail
+     */
+    static Responder chunked(String contentType, byte[] head, byte[] middle, byte[] tail,
+                             int repeats, long pauseMillis) {
+        return out -> {
+            writeHead(out, contentType, null, "Transfer-Encoding: chunked");
+            writeChunk(out, head);
+            for (int i = 0; i < repeats; i++) {
+                if (pauseMillis > 0) {
+                    out.flush();
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(pauseMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(e);
+                    }
+                }
+                writeChunk(out, middle);
+            }
+            writeChunk(out, tail);
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        };
+    }
+
+    private static void writeHead(OutputStream out, String contentType, String contentEncoding,
+                                  String framing) throws IOException {
+        StringBuilder head = new StringBuilder("HTTP/1.1 200 OK\r\n")
+                .append("Content-Type: ").append(contentType).append("\r\n");
+        if (contentEncoding != null) {
+            head.append("Content-Encoding: ").append(contentEncoding).append("\r\n");
+        }
+        head.append(framing).append("\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeChunk(OutputStream out, byte[] chunk) throws IOException {
+        if (chunk.length == 0) return;
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(chunk.length + 16);
+        frame.write((Integer.toHexString(chunk.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        frame.write(chunk);
+        frame.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        frame.writeTo(out);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds call metrics to the {@link SyncPlanner} and checks the link quality it judges, from the
+ * round trip time and from the throughput of bodies too small to time one by one.
+ */
+public class SyncPlannerTest {
+
+    private static final long FAST_ROUND_TRIP_MILLIS = 100;
+    private static final long FORECAST_BYTES = 1024;
+
+    private SyncPlanner mPlanner;
+    private URL mUrl;
+
+    @Before
+    public void setUp() throws MalformedURLException {
+        mPlanner = new SyncPlanner(new InMemoryContext(null));
+        mUrl = new URL("http://127.0.0.1/weather");
+    }
+
+    @Test
+    public void unknownLinkIsModerate() {
+        assertEquals(SyncPlanner.LinkQuality.MODERATE, mPlanner.getLinkQuality());
+    }
+
+    @Test
+    public void fastSmallBodiesMakeAGoodLink() {
+        for (int i = 0; i < 20; i++) {
+            call(FAST_ROUND_TRIP_MILLIS, FORECAST_BYTES, 0);
+        }
+
+        assertEquals(SyncPlanner.LinkQuality.GOOD, mPlanner.getLinkQuality());
+        SyncPlanner.Plan plan = mPlanner.plan();
+        assertEquals(WeatherNetworkDataSource.NUM_DAYS, plan.horizonDays);
+        assertFalse(plan.compression);
+    }
+
+    @Test
+    public void slowLargeBodyLowersLinkQuality() {
+        call(FAST_ROUND_TRIP_MILLIS, FORECAST_BYTES, 0);
+        assertEquals(SyncPlanner.LinkQuality.GOOD, mPlanner.getLinkQuality());
+
+        // 64 KB in 4 s, 16 KB/s behind a quick round trip
+        call(FAST_ROUND_TRIP_MILLIS, 64 * 1024, 4000);
+
+        assertEquals(SyncPlanner.LinkQuality.POOR, mPlanner.getLinkQuality());
+        SyncPlanner.Plan plan = mPlanner.plan();
+        assertEquals(SyncPlanner.POOR_LINK_HORIZON_DAYS, plan.horizonDays);
+        assertTrue(plan.compression);
+    }
+
+    @Test
+    public void slowSmallBodiesAddUpToAThroughputSample() {
+        // 1 KB in 250 ms, 4 KB/s, but no single body is enough to tell
+        for (int i = 0; i < 7; i++) {
+            call(FAST_ROUND_TRIP_MILLIS, FORECAST_BYTES, 250);
+        }
+        assertEquals(SyncPlanner.LinkQuality.GOOD, mPlanner.getLinkQuality());
+
+        call(FAST_ROUND_TRIP_MILLIS, FORECAST_BYTES, 250);
+        assertEquals(SyncPlanner.LinkQuality.POOR, mPlanner.getLinkQuality());
+    }
+
+    @Test
+    public void failedCallsAddNoThroughput() {
+        call(FAST_ROUND_TRIP_MILLIS, FORECAST_BYTES, 0);
+        for (int i = 0; i < 20; i++) {
+            mPlanner.onCallFinished(new WeatherHttpClient.CallMetrics(mUrl, false, false,
+                    FAST_ROUND_TRIP_MILLIS, FAST_ROUND_TRIP_MILLIS + 5000, FORECAST_BYTES,
+                    FORECAST_BYTES));
+        }
+
+        assertEquals(SyncPlanner.LinkQuality.GOOD, mPlanner.getLinkQuality());
+    }
+
+    private void call(long roundTripMillis, long wireBytes, long bodyMillis) {
+        mPlanner.onCallFinished(new WeatherHttpClient.CallMetrics(mUrl, true, false,
+                roundTripMillis, roundTripMillis + bodyMillis, wireBytes, wireBytes));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import com.example.android.sunshine.R;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the temperatures and winds formatted from the parsed formats, cached or not, are the
+ * strings String.format makes of the same formats, in locales with other digits too.
+ */
+public class SolAppWeatherUtilsTest {
+
+    private static final Locale[] LOCALES = {Locale.US, Locale.GERMANY,
+            Locale.forLanguageTag("ar-EG"), Locale.forLanguageTag("th-TH-u-nu-thai")};
+    private static final double[] EDGES = {0, -0.0, 0.4, -0.4, 0.5, -0.5, 0.49999999999999994,
+            -0.49999999999999994, 2.5, -2.5, 127.4, 127.5, -128.5, -128.6, 255.5, 1e14 + 0.5,
+            -1e14, 1e15, 1e300, Double.NaN, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY};
+    private static final double[] DIRECTIONS = {0, 22.5, 90, 200, 337.4, 337.5, -1, Double.NaN};
+
+    @After
+    public void tearDown() {
+        SolAppWeatherUtils.invalidate();
+    }
+
+    @Test
+    public void temperaturesAreFormattedAsStringFormatDoes() throws IOException {
+        for (Locale locale : LOCALES) {
+            ShimContext context = load(locale);
+            String format = context.getString(R.string.format_temperature);
+            for (double temperature : values()) {
+                // Twice, formatted and then cached
+                for (int i = 0; i < 2; i++) {
+                    assertEquals(locale + " " + temperature,
+                            String.format(locale, format, temperature),
+                            SolAppWeatherUtils.formatTemperature(context, temperature));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void windsAreFormattedAsStringFormatDoes() throws IOException {
+        String[] names = {"N", "NE", "E", "S", "NW", "N", "N", "Unknown"};
+        for (Locale locale : LOCALES) {
+            ShimContext context = load(locale);
+            String format = context.getString(R.string.format_wind_kmh);
+            for (double windSpeed : values()) {
+                for (int d = 0; d < DIRECTIONS.length; d++) {
+                    for (int i = 0; i < 2; i++) {
+                        assertEquals(locale + " " + windSpeed + " " + DIRECTIONS[d],
+                                String.format(locale, format, windSpeed, names[d]),
+                                SolAppWeatherUtils.getFormattedWind(context, windSpeed,
+                                        DIRECTIONS[d]));
+                    }
+                }
+            }
+        }
+    }
+
+    private static ShimContext load(Locale locale) throws IOException {
+        SolAppWeatherUtils.invalidate();
+        return ShimContext.load(new File(ShimContext.STRINGS_PATH), locale);
+    }
+
+    private static double[] values() {
+        Random random = new Random(42);
+        double[] values = new double[EDGES.length + 200];
+        System.arraycopy(EDGES, 0, values, 0, EDGES.length);
+        for (int i = EDGES.length; i < values.length; i++) {
+            values[i] = (random.nextDouble() - 0.3) * 400;
+        }
+        return values;
+    }
+}